@@ -8,12 +8,10 @@ public interface K {
 
     /***
      * A key to an intent extra to pass a number place puzzle data.
-     * The content is a byte[][] object.
-     * <p>
-     * NOTE that a byte[][] object stored in intent appears to be gotten as an
-     * Object[] object. I'm not sure why and when it happens. The receiver needs
-     * to take care of it. (Probably I was fool choosing byte[][] for a puzzle
-     * data...)
+     * The content is of type byte[] and containing the binary form of a
+     * {@link com.gmail.at.sabre.alissa.numberplace.solver.Grid}, as
+     * {@link com.gmail.at.sabre.alissa.numberplace.solver.Grid#toByteArray()}
+     * returns.
      */
     public static final String EXTRA_PUZZLE_DATA = "PUZZLE_DATA";
 
@@ -19,6 +19,7 @@ import android.widget.ImageView;
 import com.gmail.at.sabre.alissa.numberplace.K;
 import com.gmail.at.sabre.alissa.numberplace.R;
 import com.gmail.at.sabre.alissa.numberplace.editor.OpenCVInitializer;
+import com.gmail.at.sabre.alissa.numberplace.solver.Grid;
 import com.gmail.at.sabre.alissa.ocr.Ocr;
 
 /**
@@ -75,7 +76,7 @@ public class CaptureActivity extends Activity {
         mThread.setOcr(prepareOcr());
         mThread.setBitmap(bitmap);
         mThread.setCallback(new CaptureWorkerThread.Callback() {
-            public void onPuzzleRecognized(byte[][] puzzle) {
+            public void onPuzzleRecognized(Grid puzzle) {
                 thread_onPuzzleRecognized(puzzle);
             }
         });
@@ -165,12 +166,12 @@ public class CaptureActivity extends Activity {
 		);
     }
 
-    private void thread_onPuzzleRecognized(final byte[][] puzzle) {
+    private void thread_onPuzzleRecognized(final Grid puzzle) {
         Log.i(TAG, puzzle == null ? "onPuzzleRecognized (puzzle == null)" : "onPuzzleRecognized (puzzle != null)");
         mHandler.post(new Runnable() {
             public void run() {
                 Intent result = new Intent();
-                result.putExtra(K.EXTRA_PUZZLE_DATA, puzzle);
+                result.putExtra(K.EXTRA_PUZZLE_DATA, puzzle == null ? null : puzzle.toByteArray());
                 setResult(RESULT_OK, result);
                 finish();
             }
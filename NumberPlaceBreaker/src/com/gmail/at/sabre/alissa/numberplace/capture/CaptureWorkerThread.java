@@ -6,12 +6,19 @@ import org.opencv.core.Mat;
 import android.graphics.Bitmap;
 import android.graphics.Bitmap.Config;
 
+import com.gmail.at.sabre.alissa.numberplace.solver.GivenCorrector;
+import com.gmail.at.sabre.alissa.numberplace.solver.Grid;
 import com.gmail.at.sabre.alissa.ocr.Ocr;
 
 /***
  * The thread that recognize a puzzle board. This class only contains a driver
  * and some glue between Android and OpenCV. The actual recognition algorithm is
  * in a separate class {@link ImageProcessing}.
+ * <p>
+ * A recognized puzzle is then checked by {@link GivenCorrector}. If it has no
+ * solution, the digits most likely misrecognized are corrected to the OCR
+ * candidates that make the puzzle solvable, so that the user needn't capture
+ * the puzzle again.
  *
  * @author alissa
  *
@@ -19,7 +26,7 @@ import com.gmail.at.sabre.alissa.ocr.Ocr;
 class CaptureWorkerThread extends Thread {
 
     public interface Callback {
-        public void onPuzzleRecognized(byte[][] puzzle);
+        public void onPuzzleRecognized(Grid puzzle);
     }
 
     private Callback mCallback = null;
@@ -28,6 +35,8 @@ class CaptureWorkerThread extends Thread {
 
     private Bitmap mBitmap = null;
 
+    private final GivenCorrector mCorrector = new GivenCorrector();
+
     private final Object mLock = new Object();
 
     private volatile boolean mQuit = false;
@@ -84,6 +93,7 @@ class CaptureWorkerThread extends Thread {
             mQuit = true;
             mLock.notifyAll();
         }
+        mCorrector.stop();
     }
 
     /***
@@ -104,9 +114,24 @@ class CaptureWorkerThread extends Thread {
         if (mQuit) return;
 
         // A bitmap is ready. Try recognizing a puzzle on it.
-        byte[][] puzzle = new byte[9][9];
-        boolean captured = recognize(mOcr, mBitmap, puzzle);
-        if (!captured) puzzle = null;
+        final int[][][] weights = new int[9][9][];
+        Grid puzzle = recognize(mOcr, mBitmap, weights);
+        if (mQuit) return;
+
+        // Correct misrecognized digits, if any, using the solution that
+        // disagrees least with the OCR.
+        if (puzzle != null) {
+            final byte[][] solution = mCorrector.solve(weights);
+            if (solution != null && mCorrector.getCorrectedCount() > 0) {
+                final byte[] corrected = new byte[9 * 9];
+                for (int y = 0; y < 9; y++) {
+                    for (int x = 0; x < 9; x++) {
+                        if (puzzle.get(x, y) > 0) corrected[y * 9 + x] = solution[y][x];
+                    }
+                }
+                puzzle = Grid.of(9, corrected);
+            }
+        }
 
         // Invoke a callback.
         Callback callback = mCallback;
@@ -117,7 +142,7 @@ class CaptureWorkerThread extends Thread {
 
     /***
      * Convert an Android bitmap image to an OpenCV Mat image,
-     * then call {@link ImageProcessing#recognize(Ocr, Mat, byte[][])}
+     * then call {@link ImageProcessing#recognize(Ocr, Mat, int[][][])}
      * to recognize a puzzle on the image.
      * We make the image format conversion here (not in {@link ImageProcessing})
      * so that it is independent from Android specific classes and
@@ -127,14 +152,14 @@ class CaptureWorkerThread extends Thread {
      *            An OCR engine
      * @param src_bitmap
      *            A source bitmap image in {@link Config#RGB_565} or {@link Config#ARGB_8888}.
-     * @param puzzle
-     *            A 9x9 array to receive a recognized puzzle
+     * @param weights
+     *            A 9x9 array to receive the weights of OCR candidates
      * @return
-     *            True if a puzzle is successfully recognized
+     *            The recognized puzzle, or null if no puzzle is recognized
      */
-    private static boolean recognize(Ocr ocr, Bitmap src_bitmap, byte[][] puzzle) {
+    private static Grid recognize(Ocr ocr, Bitmap src_bitmap, int[][][] weights) {
         if (src_bitmap.getConfig() != Config.RGB_565 &&
-            src_bitmap.getConfig() != Config.ARGB_8888) return false; // Just in case
+            src_bitmap.getConfig() != Config.ARGB_8888) return null; // Just in case
 
         final Mat src = new Mat();
         Utils.bitmapToMat(src_bitmap, src);
@@ -143,10 +168,10 @@ class CaptureWorkerThread extends Thread {
         // shows the bitmap on the screen when this thread is working.
         // If we recycled it, the ImageView in CaptureActivity would crush
         // when it needs to redraw the screen.
-        final boolean success = ImageProcessing.recognize(ocr, src, puzzle);
+        final Grid puzzle = ImageProcessing.recognize(ocr, src, weights);
         src.release();
 
-        return success;
+        return puzzle;
     }
 
 }
@@ -3,7 +3,9 @@ package com.gmail.at.sabre.alissa.numberplace.capture;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.opencv.core.Core;
 import org.opencv.core.CvType;
@@ -19,6 +21,7 @@ import org.opencv.imgproc.Imgproc;
 
 import android.annotation.SuppressLint;
 
+import com.gmail.at.sabre.alissa.numberplace.solver.Grid;
 import com.gmail.at.sabre.alissa.ocr.Ocr;
 
 /***
@@ -44,6 +47,19 @@ public class ImageProcessing {
      */
     private static final int UNIT = 80;
 
+    /***
+     * The weight of the digit recognized in a cell, when the weights of the
+     * OCR candidates are requested. Other candidates are weighted relative
+     * to it by their OCR scores.
+     */
+    private static final int WEIGHT_SCALE = 100;
+
+    /***
+     * The maximum number of OCR candidates weighted for a cell, including the
+     * recognized digit.
+     */
+    private static final int WEIGHTED_CANDIDATES = 3;
+
     /***
      * Process the given image data, recognize a number place puzzle on it, and
      * return the puzzle data in a format that a solver can handle. It uses a
@@ -54,11 +70,31 @@ public class ImageProcessing {
      *            An OCR engine to use when recognizing digits.
      * @param source
      *            The source image of a number place puzzle. It is not modified.
-     * @param puzzle
-     *            A nine by nine array to receive the recognized puzzle.
-     * @return True if a puzzle is successfully recognized.
+     * @return The recognized puzzle, or null if no puzzle is recognized.
+     */
+    public static Grid recognize(Ocr ocr, Mat source) {
+        return recognize(ocr, source, null);
+    }
+
+    /***
+     * Recognize a number place puzzle as {@link #recognize(Ocr, Mat)}
+     * does, and also weight the top OCR candidates of each digit, so that a
+     * solver can correct a misrecognized digit, e.g., by
+     * {@link com.gmail.at.sabre.alissa.numberplace.solver.GivenCorrector}.
+     *
+     * @param ocr
+     *            An OCR engine to use when recognizing digits.
+     * @param source
+     *            The source image of a number place puzzle. It is not modified.
+     * @param weights
+     *            A nine by nine array to receive the weights, or null if not
+     *            needed. For a cell that a digit is recognized in, an array of
+     *            length 10 is set, whose element [d] is the weight of the
+     *            digit d. The recognized digit has the largest weight. It is
+     *            left null for other cells.
+     * @return The recognized puzzle, or null if no puzzle is recognized.
      */
-    public static boolean recognize(Ocr ocr, Mat source, byte[][] puzzle) {
+    public static Grid recognize(Ocr ocr, Mat source, int[][][] weights) {
 
         // Recognize the puzzle board and get a right-fit image of the
         // board.
@@ -67,11 +103,12 @@ public class ImageProcessing {
 
         // Recognize fixed digits on the board.  We rely on the grid
         // inferred by the puzzle frame to locate the digits.
-        if (ok) ok = recognizeDigits(ocr, right, puzzle);
+        final byte[] puzzle = new byte[9 * 9];
+        if (ok) ok = recognizeDigits(ocr, right, puzzle, weights);
 
         right.release();
 
-        return ok;
+        return ok ? Grid.of(9, puzzle) : null;
     }
 
     /***
@@ -440,13 +477,16 @@ public class ImageProcessing {
      * @param src
      *            The right source image. It is not modified.
      * @param puzzle
-     *            A nine by nine array initialized to all zeros. The recognized
-     *            digits will be set to appropriate elements of this array upon
-     *            return.
+     *            An array of 81 digits in the row major order, initialized to
+     *            all zeros. The recognized digits will be set to appropriate
+     *            elements of this array upon return.
+     * @param weights
+     *            A nine by nine array to receive the weights of OCR candidates
+     *            of each recognized digit, or null.
      * @return
      *            True if successful.
      */
-    private static boolean recognizeDigits(Ocr ocr, Mat src, byte[][] puzzle) {
+    private static boolean recognizeDigits(Ocr ocr, Mat src, byte[] puzzle, int[][][] weights) {
 
     	final Mat tmp = new Mat();
     	level(src, tmp);
@@ -469,6 +509,7 @@ public class ImageProcessing {
         // the total width and heights of the focus area is UNIT * 2
         // by UNIT * 2 pixels.
         final Rect roi = new Rect(0, 0, UNIT * 2, UNIT * 2);
+        final Map<String, Float> scores = weights == null ? null : new HashMap<String, Float>();
 
         for (int y = 0; y < 9; y++) {
             for (int x = 0; x < 9; x++) {
@@ -480,15 +521,17 @@ public class ImageProcessing {
                 final Mat focused = tmp.submat(roi);
 
                 // Try to recognize a digit in the focused area.
-                final String digit = recognizeOneDigit(ocr, focused);
+                if (scores != null) scores.clear();
+                final String digit = recognizeOneDigit(ocr, focused, scores);
 
                 // If one is recognized, set it to the puzzle data.
                 if (digit != null) {
                     final byte d = Byte.parseByte(digit);
                     if (d >= 1 && d <= 9) {
-                        puzzle[y][x] = d;
+                        puzzle[y * 9 + x] = d;
+                        if (weights != null) weights[y][x] = weighCandidates(d, scores);
                     } else {
-                        // puzzle[y][x] = -1;
+                        // puzzle[y * 9 + x] = -1;
                     }
                 }
 
@@ -501,6 +544,38 @@ public class ImageProcessing {
         return true;
     }
 
+    /***
+     * Weight the OCR candidates of a recognized digit by their scores. The
+     * recognized digit is weighted {@link #WEIGHT_SCALE}, and a few other
+     * candidates of the top scores are weighted relative to it.
+     *
+     * @param digit
+     *            The recognized digit.
+     * @param scores
+     *            The OCR scores of the candidates.
+     * @return The weights indexed by digit.
+     */
+    private static int[] weighCandidates(int digit, Map<String, Float> scores) {
+        final float[] s = new float[10];
+        for (int d = 1; d <= 9; d++) {
+            final Float f = scores.get(Integer.toString(d));
+            if (f != null) s[d] = f;
+        }
+        final float top = Math.max(s[digit], Float.MIN_VALUE);
+
+        final int[] w = new int[10];
+        w[digit] = WEIGHT_SCALE;
+        for (int n = 1; n < WEIGHTED_CANDIDATES; n++) {
+            int best = 0;
+            for (int d = 1; d <= 9; d++) {
+                if (w[d] == 0 && s[d] > s[best]) best = d;
+            }
+            if (best == 0) break;
+            w[best] = Math.max(1, Math.min(WEIGHT_SCALE - 1, Math.round(WEIGHT_SCALE * s[best] / top)));
+        }
+        return w;
+    }
+
     private static final int sKernelSize = (UNIT + UNIT / 4) | 1;
 
 	private static void level(Mat src, Mat dst) {
@@ -525,10 +600,12 @@ public class ImageProcessing {
      *            The OCR engine.
      * @param src
      *            The image of a focused area. It is not modified.
+     * @param scores
+     *            A map to receive the OCR scores of the candidates, or null.
      * @return
      *            A string representation of the recognized digit.
      */
-    private static String recognizeOneDigit(Ocr ocr, Mat src) {
+    private static String recognizeOneDigit(Ocr ocr, Mat src, Map<String, Float> scores) {
 
         // Beginning with the gray scale image again, make a binary
         // image of this focused area.  This time we process the
@@ -582,7 +659,7 @@ public class ImageProcessing {
 
             // Recognize the blob as a digit.
             final Mat tmp2 = tmp.submat(rect);
-            d = ocr.recognize(tmp2);
+            d = scores == null ? ocr.recognize(tmp2) : ocr.recognize(tmp2, scores);
             tmp2.release();
 
             // A null from Ocr.recognize means that it couldn't
@@ -16,7 +16,11 @@ import com.gmail.at.sabre.alissa.numberplace.K;
 import com.gmail.at.sabre.alissa.numberplace.R;
 import com.gmail.at.sabre.alissa.numberplace.capture.CameraActivity;
 import com.gmail.at.sabre.alissa.numberplace.capture.CaptureActivity;
+import com.gmail.at.sabre.alissa.numberplace.solver.BitboardSolver;
+import com.gmail.at.sabre.alissa.numberplace.solver.Grid;
+import com.gmail.at.sabre.alissa.numberplace.solver.HintService;
 import com.gmail.at.sabre.alissa.numberplace.solver.PuzzleSolver;
+import com.gmail.at.sabre.alissa.numberplace.solver.SolverEngine;
 
 /***
  * The main activity of the number place app.
@@ -33,7 +37,9 @@ public class MainActivity extends Activity {
     private static final int REQ_CAPTURE = 2;
 
     private Handler mHandler;
-    private PuzzleSolver mSolver;
+    private SolverEngine mSolver;
+    private PuzzleSolver mDiagnoser;
+    private HintService mHints;
     private PuzzleEditorView mPuzzleEditor;
 
     private boolean mOpenCVIgnore;
@@ -55,6 +61,11 @@ public class MainActivity extends Activity {
                 buttonSolve_onClick(v);
             }
         });
+        findViewById(R.id.button_hint).setOnClickListener(new View.OnClickListener() {
+            public void onClick(View v) {
+                buttonHint_onClick(v);
+            }
+        });
         findViewById(R.id.button_about).setOnClickListener(new View.OnClickListener() {
             public void onClick(View v) {
                 buttonAbout_onClick(v);
@@ -62,8 +73,17 @@ public class MainActivity extends Activity {
         });
 
         mHandler = new Handler();
-        mSolver = new PuzzleSolver();
+        mSolver = newSolverEngine();
+        mDiagnoser = new PuzzleSolver();
+        mHints = new HintService();
         mPuzzleEditor = (PuzzleEditorView)findViewById(R.id.puzzleEditorView);
+        mPuzzleEditor.setOnCellEditListener(new PuzzleEditorView.OnCellEditListener() {
+            public void onCellEdit(PuzzleEditorView view, int x, int y, int digit) {
+                // A cleared cell still shows its solution or hint digit, if
+                // any, so the hints should go on from it.
+                mHints.setCell(x, y, digit > 0 ? digit : view.getSolution().get(x, y));
+            }
+        });
 
         mOpenCVIgnore = false;
         mOpenCVInit = new OpenCVInitializer(this, OpenCVLoader.OPENCV_VERSION_2_4_6);
@@ -112,19 +132,21 @@ public class MainActivity extends Activity {
 				// and try again if they were not ready.
 	        	final Button capture = (Button)findViewById(R.id.button_capture);
 	        	final Button solve   = (Button)findViewById(R.id.button_solve  );
+	        	final Button hint    = (Button)findViewById(R.id.button_hint   );
 	        	final Button about   = (Button)findViewById(R.id.button_about  );
-	        	done = capture.onPreDraw() & solve.onPreDraw() & about.onPreDraw();
+	        	done = capture.onPreDraw() & solve.onPreDraw() & hint.onPreDraw() & about.onPreDraw();
 	        	if (!done) return done;
 
 	        	// OK.  All buttons are ready.
 	        	// Ask them whether both icons and texts fit in the available width.
-	        	done = capture.getLineCount() == 1 && solve.getLineCount() == 1 && about.getLineCount() == 1;
+	        	done = capture.getLineCount() == 1 && solve.getLineCount() == 1 && hint.getLineCount() == 1 && about.getLineCount() == 1;
 		        if (!done) {
 		        	// Texts on one or more buttons didn't fit in a single line.
 		        	// Remove the button icons to make more space.
 		        	// Run the predraw hook again.
 		        	capture.setCompoundDrawables(null, null, null, null);
 		        	solve  .setCompoundDrawables(null, null, null, null);
+		        	hint   .setCompoundDrawables(null, null, null, null);
 		        	about  .setCompoundDrawables(null, null, null, null);
 		        }
 
@@ -156,6 +178,7 @@ public class MainActivity extends Activity {
     public void onRestoreInstanceState(Bundle savedInstanceState) {
         super.onRestoreInstanceState(savedInstanceState);
         mPuzzleEditor.restoreState(savedInstanceState);
+        loadHints();
         mOpenCVIgnore = savedInstanceState.getBoolean(getClass().getName() + ".mOpenCVIgnore");
     }
 
@@ -173,16 +196,11 @@ public class MainActivity extends Activity {
         }
 
         if (requestCode == REQ_CAPTURE && resultCode == RESULT_OK) {
-            Object obj = data.getSerializableExtra(K.EXTRA_PUZZLE_DATA);
-            if (obj == null) {
+            final byte[] bytes = data.getByteArrayExtra(K.EXTRA_PUZZLE_DATA);
+            if (bytes == null) {
                 Toast.makeText(getApplicationContext(), R.string.toast_text_recognition_failed, Toast.LENGTH_LONG).show();
             } else {
-                // Hmm... It appears that a serialized byte[][] object ("[[B")
-                // is deserialized back as an Object[] containing byte[].
-                // I don't know why.  Anyway we need to live with it.
-                // Well, I have a slight feeling that the choice of byte[][]
-                // for puzzle data *was* not wise. XXX
-                onPuzzleCapture(toByteArrayArray(obj));
+                onPuzzleCapture(Grid.fromByteArray(bytes));
             }
         }
 
@@ -191,19 +209,6 @@ public class MainActivity extends Activity {
         }
     }
 
-    private static byte[][] toByteArrayArray(Object obj) {
-        try {
-            Object[] src = (Object[])obj;
-            byte[][] dst = new byte[src.length][];
-            for (int i = 0; i < src.length; i++) {
-                dst[i] = (byte[])src[i];
-            }
-            return dst;
-        } catch (ClassCastException e) {
-            return null;
-        }
-    }
-
     @Override
     protected void onResume() {
         Log.i(TAG, "onResume");
@@ -249,12 +254,47 @@ public class MainActivity extends Activity {
 		);
     }
 
-    private void onPuzzleCapture(byte[][] puzzle) {
+    private void onPuzzleCapture(Grid puzzle) {
         mPuzzleEditor.setFixedDigits(puzzle);
         mPuzzleEditor.setSolution(null);
+        loadHints();
+    }
+
+    /***
+     * Load the puzzle in the editor into the hint service.
+     * The digits of the solution shown so far count as given,
+     * so that the hints don't repeat them.
+     */
+    private void loadHints() {
+        final Grid puzzle = mPuzzleEditor.getFixedDigits();
+        final Grid solution = mPuzzleEditor.getSolution();
+        final byte[] cells = new byte[9 * 9];
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = (byte)(puzzle.get(i) > 0 ? puzzle.get(i) : solution.get(i));
+        }
+        mHints.load(Grid.of(9, cells));
+    }
+
+    /***
+     * Create the solver engine to solve puzzles with.
+     * {@link BitboardSolver} solves a usual puzzle in a moment.
+     * Return a {@link com.gmail.at.sabre.alissa.numberplace.solver.PuzzleSolver}
+     * instead to solve puzzles by SAT4J.
+     *
+     * @return The solver engine.
+     */
+    private static SolverEngine newSolverEngine() {
+        return new BitboardSolver();
     }
 
     private void buttonSolve_onClick(View view) {
+        // A digit twice in a unit is highlighted already, and
+        // there is no need to search for a solution.
+        if (mPuzzleEditor.hasConflicts()) {
+            Toast.makeText(getApplicationContext(), R.string.toast_text_conflicting, Toast.LENGTH_LONG).show();
+            return;
+        }
+
         mPuzzleEditor.setEnabled(false);
         mPuzzleEditor.setSolution(null);
 
@@ -262,38 +302,98 @@ public class MainActivity extends Activity {
 
         findViewById(R.id.button_capture).setEnabled(false);
         findViewById(R.id.button_solve).setEnabled(false);
+        findViewById(R.id.button_hint).setEnabled(false);
         findViewById(R.id.button_about).setEnabled(false);
 
         // The following code fragment does:
         // (1) Execute mSolver.solve() in a separate thread.
-        // (2) Then, execute onPuzzleSolved() in the UI thread.
-        final byte[][] puzzle = mPuzzleEditor.getFixedDigits();
+        // (2) If it failed, find the conflicting givens (that are likely
+        //     misrecognized) by mDiagnoser in the same thread.
+        // (3) Then, execute onPuzzleSolved() in the UI thread.
+        // The solvers take the puzzle as an array, that they work on.
+        final Grid puzzle = mPuzzleEditor.getFixedDigits();
         new Thread() { { setDaemon(true); }
             @Override
             public void run() {
-                final byte[][] solution = mSolver.solve(puzzle);
+                final byte[][] digits = puzzle.toArray();
+                final byte[][] solution = mSolver.solve(digits);
+                final boolean[][] conflicts = solution == null && !mSolver.isStopped()
+                        ? mDiagnoser.findConflictingGivens(digits) : null;
+                final Grid grid = solution == null ? null : Grid.of(solution);
                 mHandler.post(new Runnable() {
                     public void run() {
-                        onPuzzleSolved(solution);
+                        onPuzzleSolved(grid, conflicts);
                     }
                 });
             }
         }.start();
     }
 
-    private void onPuzzleSolved(byte[][] solution) {
+    private void onPuzzleSolved(Grid solution, boolean[][] conflicts) {
         mPuzzleEditor.setSolution(solution);
+        mPuzzleEditor.setConflicts(conflicts);
         mPuzzleEditor.setEnabled(true);
+        loadHints();
 
         findViewById(R.id.button_capture).setEnabled(true);
         findViewById(R.id.button_solve).setEnabled(true);
+        findViewById(R.id.button_hint).setEnabled(true);
         findViewById(R.id.button_about).setEnabled(true);
 
         findViewById(R.id.busy).setVisibility(View.INVISIBLE);
 
         if (solution == null) {
-            Toast.makeText(getApplicationContext(), R.string.toast_text_impossible, Toast.LENGTH_LONG).show();
+            final int text = conflicts != null ? R.string.toast_text_conflicting : R.string.toast_text_impossible;
+            Toast.makeText(getApplicationContext(), text, Toast.LENGTH_LONG).show();
+        }
+    }
+
+    private void buttonHint_onClick(View view) {
+        mPuzzleEditor.setEnabled(false);
+
+        findViewById(R.id.busy).setVisibility(View.VISIBLE);
+
+        findViewById(R.id.button_capture).setEnabled(false);
+        findViewById(R.id.button_solve).setEnabled(false);
+        findViewById(R.id.button_hint).setEnabled(false);
+        findViewById(R.id.button_about).setEnabled(false);
+
+        // A hint usually needs no search, but when it does, a search by
+        // BitboardSolver may take long on a hard puzzle, so mHints is asked
+        // in a separate thread, and onHintFound() is executed in the UI
+        // thread, as solving the whole puzzle is. The editor is disabled
+        // meanwhile, so the puzzle doesn't change under the search.
+        new Thread() { { setDaemon(true); }
+            @Override
+            public void run() {
+                final HintService.Hint hint = mHints.nextHint();
+                final boolean solvable = hint != null || mHints.isSolvable();
+                mHandler.post(new Runnable() {
+                    public void run() {
+                        onHintFound(hint, solvable);
+                    }
+                });
+            }
+        }.start();
+    }
+
+    private void onHintFound(HintService.Hint hint, boolean solvable) {
+        mPuzzleEditor.setEnabled(true);
+
+        findViewById(R.id.button_capture).setEnabled(true);
+        findViewById(R.id.button_solve).setEnabled(true);
+        findViewById(R.id.button_hint).setEnabled(true);
+        findViewById(R.id.button_about).setEnabled(true);
+
+        findViewById(R.id.busy).setVisibility(View.INVISIBLE);
+
+        if (hint == null) {
+            final int text = solvable ? R.string.toast_text_no_hint : R.string.toast_text_impossible;
+            Toast.makeText(getApplicationContext(), text, Toast.LENGTH_SHORT).show();
+            return;
         }
+        mPuzzleEditor.setSolutionDigit(hint.getX(), hint.getY(), hint.getDigit());
+        mHints.setCell(hint.getX(), hint.getY(), hint.getDigit());
     }
 
     private void buttonAbout_onClick(View view) {
@@ -305,6 +405,7 @@ public class MainActivity extends Activity {
         Log.i(TAG, "onStop");
         super.onStop();
         mSolver.stop();
+        mDiagnoser.stop();
     }
 
     @Override
@@ -4,6 +4,7 @@ import android.content.Context;
 import android.content.res.Resources;
 import android.content.res.Resources.NotFoundException;
 import android.content.res.TypedArray;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
@@ -11,6 +12,8 @@ import android.graphics.Paint.Align;
 import android.graphics.Paint.FontMetrics;
 import android.graphics.Paint.Style;
 import android.graphics.Path;
+import android.graphics.Rect;
+import android.graphics.RectF;
 import android.graphics.Typeface;
 import android.os.Bundle;
 import android.util.AttributeSet;
@@ -18,6 +21,8 @@ import android.view.MotionEvent;
 import android.view.View;
 
 import com.gmail.at.sabre.alissa.numberplace.R;
+import com.gmail.at.sabre.alissa.numberplace.solver.Grid;
+import com.gmail.at.sabre.alissa.numberplace.solver.GridValidator;
 
 /**
  * TODO: document your custom view class.
@@ -30,6 +35,8 @@ public class PuzzleEditorView extends View {
     final private int mFocusBorderColor;
     final private int mFixedDigitColor;
     final private int mSolutionColor;
+    final private int mConflictColor;
+    final private int mCandidateColor;
     
     final private int mMajorBorderWidth;
     final private int mMinorBorderWidth;
@@ -41,6 +48,7 @@ public class PuzzleEditorView extends View {
     
     final private float mPadDistX = 1.2f;
     final private float mPadDistY = -0.8f;
+    final private float mPadMargin = 0.2f;
     
     final private String[] mDigitStrings;
     final private String mClearLabel;
@@ -60,6 +68,39 @@ public class PuzzleEditorView extends View {
      */
     final private Path mFloatOnLeft;
     
+    /***
+     * An image of the grid lines, i.e., the minor and major borders,
+     * to draw at (mOriginX - mGridMargin, mOriginY - mGridMargin).
+     * It is rendered again only when the size of the view changes.
+     */
+    private Bitmap mGridBitmap;
+    private int mGridMargin;
+    
+    /***
+     * An image of the nine digits in a row, each in the size of a cell,
+     * to draw the digits on the puzzle and the pad with.  It has alpha
+     * only, as {@link #mCandidateAtlas}.
+     */
+    private Bitmap mDigitAtlas;
+    final private RectF mGlyphDst = new RectF();
+    
+    /***
+     * The area to redraw, to skip the cells out of it.
+     */
+    final private Rect mClip = new Rect();
+    
+    /***
+     * An image of the nine digits in a row, in the size of pencil marks,
+     * to draw the candidates of the empty cells with.  It has alpha only,
+     * so it is drawn in the paint's color.  It is rendered again only
+     * when the size of the view changes.  It is null if the cells are
+     * too small for pencil marks.
+     */
+    private Bitmap mCandidateAtlas;
+    private int mMarkWidth, mMarkHeight;
+    final private Rect mAtlasSrc = new Rect();
+    final private Rect mAtlasDst = new Rect();
+    
     private int mWidth, mHeight;
     private int mSaneWidth, mSaneHeight; 
     private int mOriginX, mOriginY;
@@ -70,8 +111,48 @@ public class PuzzleEditorView extends View {
     
     private int mFocusX, mFocusY;
     
-    private byte[][] mFixedDigits;
-    private byte[][] mSolution;
+    private Grid mFixedDigits;
+    private Grid mSolution;
+    
+    /***
+     * The fixed digits to highlight because the solver found they conflict
+     * each other, or null if none.
+     */
+    private boolean[][] mConflicts;
+    
+    /***
+     * Tracks the fixed digits that break the rules, which are always
+     * highlighted as conflicting.
+     */
+    private final GridValidator mValidator = new GridValidator();
+    
+    /***
+     * Tracks the digits shown, i.e., the fixed digits and the solution,
+     * to find the candidates of the other cells as pencil marks.
+     */
+    private final GridValidator mMarks = new GridValidator();
+    
+    /***
+     * A listener to be notified when the user changes a fixed digit.
+     */
+    public interface OnCellEditListener {
+        
+        /***
+         * Called when the user has changed a fixed digit.
+         * 
+         * @param view
+         *            The view.
+         * @param x
+         *            The column of the cell, in range 0..8.
+         * @param y
+         *            The row of the cell, in range 0..8.
+         * @param digit
+         *            The new digit in range 1..9, or 0 if the cell was cleared.
+         */
+        public void onCellEdit(PuzzleEditorView view, int x, int y, int digit);
+    }
+    
+    private OnCellEditListener mOnCellEditListener;
     
     public PuzzleEditorView(Context context, AttributeSet attrs) {
         this(context, attrs, 0);
@@ -88,6 +169,8 @@ public class PuzzleEditorView extends View {
         mFocusBorderColor = a.getColor(R.styleable.PuzzleEditorView_focusBorderColor, Color.BLACK);
         mFixedDigitColor = a.getColor(R.styleable.PuzzleEditorView_fixedDigitColor, Color.BLACK);
         mSolutionColor = a.getColor(R.styleable.PuzzleEditorView_solutionColor, Color.BLACK);
+        mConflictColor = a.getColor(R.styleable.PuzzleEditorView_conflictColor, Color.RED);
+        mCandidateColor = a.getColor(R.styleable.PuzzleEditorView_candidateColor, Color.GRAY);
         
         mMajorBorderWidth = a.getDimensionPixelSize(R.styleable.PuzzleEditorView_majorBorderWidth, 0);
         mMinorBorderWidth = a.getDimensionPixelSize(R.styleable.PuzzleEditorView_minorBorderWidth, 0);
@@ -133,12 +216,12 @@ public class PuzzleEditorView extends View {
         mFocusX = -1;
         mFocusY = -1;
         
-        mFixedDigits = new byte[9][9];
-        mSolution = new byte[9][9];
+        mFixedDigits = Grid.EMPTY;
+        mSolution = Grid.EMPTY;
         
         if (isInEditMode()) {
             // Provides some idea how the puzzle will be shown.
-            mFixedDigits = new byte[][] {
+            mFixedDigits = Grid.of(new byte[][] {
                     { 0, 0, 0, 2, 0, 0, 0, 0, 1 },
                     { 0, 5, 6, 0, 0, 0, 4, 3, 0 },
                     { 0, 4, 0, 0, 0, 5, 0, 2, 0 },
@@ -148,8 +231,8 @@ public class PuzzleEditorView extends View {
                     { 0, 9, 0, 6, 0, 0, 0, 4, 0 },
                     { 0, 8, 7, 0, 0, 0, 6, 5, 0 },
                     { 1, 0, 0, 0, 0, 8, 0, 0, 0 }
-            };
-            mSolution = new byte[][] {
+            });
+            mSolution = Grid.of(new byte[][] {
                     { 2, 7, 6, 0, 0, 0, 0, 0, 0 },
                     { 8, 3, 5, 0, 0, 0, 0, 0, 0 },
                     { 1, 4, 9, 0, 0, 0, 0, 0, 0 },
@@ -159,42 +242,28 @@ public class PuzzleEditorView extends View {
                     { 6, 5, 4, 0, 0, 0, 0, 0, 0 },
                     { 3, 2, 1, 0, 0, 0, 0, 0, 0 },
                     { 9, 8, 7, 0, 0, 0, 0, 0, 0 }
-            };
+            });
         }
+        mValidator.load(mFixedDigits);
+        loadMarks();
     }
     
     private static final int STATE_ARRAY_LENGTH = 9 * 9 + 9 * 9;
     
     public void saveState(Bundle outState) {
         final byte[] a = new byte[STATE_ARRAY_LENGTH];
-        int i = 0;
-        for (int y = 0; y < 9; y++) {
-            for (int x = 0; x < 9; x++) {
-                a[i++] = mFixedDigits[y][x];
-            }
-        }
-        for (int y = 0; y < 9; y++) {
-            for (int x = 0; x < 9; x++) {
-                a[i++] = mSolution[y][x];
-            }
-        }
+        mFixedDigits.asByteBuffer().get(a, 0, 9 * 9);
+        mSolution.asByteBuffer().get(a, 9 * 9, 9 * 9);
         outState.putByteArray(getClass().getName(), a);
     }
 
     public void restoreState(Bundle savedInstanceState) {
         final byte[] a = savedInstanceState.getByteArray(getClass().getName());
         if (a != null && a.length == STATE_ARRAY_LENGTH) {
-            int i = 0;
-            for (int y = 0; y < 9; y++) {
-                for (int x = 0; x < 9; x++) {
-                    mFixedDigits[y][x] = a[i++];
-                }
-            }
-            for (int y = 0; y < 9; y++) {
-                for (int x = 0; x < 9; x++) {
-                    mSolution[y][x] = a[i++];
-                }
-            }
+            mFixedDigits = Grid.of(9, a, 0);
+            mSolution = Grid.of(9, a, 9 * 9);
+            mValidator.load(mFixedDigits);
+            loadMarks();
         }
     }
 
@@ -205,78 +274,104 @@ public class PuzzleEditorView extends View {
     
     public void setCellFocus(int[] focus) {
         if (focus == null) {
-            mFocusX = -1;
-            mFocusY = -1;
+            resetCellFocus();
         } else {
-            mFocusX = focus[0];
-            mFocusY = focus[1];
+            setCellFocus(focus[0], focus[1]);
         }
-        invalidate();
     }
     
     public void setCellFocus(int focusX, int focusY) {
+        if (focusX == mFocusX && focusY == mFocusY) return;
+        invalidateFocus();
         mFocusX = focusX;
         mFocusY = focusY;
-        invalidate();
+        invalidateFocus();
     }
     
     public void resetCellFocus() {
-        mFocusX = -1;
-        mFocusY = -1;
-        invalidate();
+        setCellFocus(-1, -1);
     }
     
-    public byte[][] getFixedDigits() {
-        return duplicateDigitsArray(mFixedDigits);
+    public Grid getFixedDigits() {
+        return mFixedDigits;
     }
     
-    public void setFixedDigits(byte[][] digits) {
-        if (digits == null) {
-            mFixedDigits = new byte[9][9];
-        } else {
-            mFixedDigits = duplicateDigitsArray(checkDigitsArray(digits));
-        }
+    public void setFixedDigits(Grid digits) {
+        mFixedDigits = digits == null ? Grid.EMPTY : checkGrid(digits);
+        mValidator.load(mFixedDigits);
+        loadMarks();
+        mConflicts = null;
         invalidate();
     }
     
-    public void setSolution(byte[][] digits) {
-        if (digits == null) {
-            mSolution = new byte[9][9];
-        } else {
-            mSolution = duplicateDigitsArray(checkDigitsArray(digits));
-        }
+    public Grid getSolution() {
+        return mSolution;
+    }
+    
+    public void setSolution(Grid digits) {
+        mSolution = digits == null ? Grid.EMPTY : checkGrid(digits);
+        loadMarks();
         invalidate();
     }
 
-    private static byte[][] checkDigitsArray(byte[][] digits) {
-        if (digits == null) throw new NullPointerException("digits must not be null");
-        if (digits.length != 9) throw new IllegalArgumentException(String.format("digits.length must be 9 but %d", digits.length));
-        
-        for (int i = 0; i < digits.length; i++) {
-            final byte[] r = digits[i];
-            if (r == null) throw new NullPointerException(String.format("digits[%d] must not be null", i));
-            if (r.length != 9) throw new IllegalArgumentException(String.format("digits[%d].length must be 9 but %d", i, r.length));
-        }
-        
-        for (int y = 0; y < digits.length; y++) {
-            final byte[] r = digits[y];
-            for (int x = 0; x < r.length; x++) {
-                final byte d = r[x];
-                if (d < 0 || d > 9) {
-                    throw new IllegalArgumentException(String.format("digits' element must be in range 0..9, but digit[%d][%d] was %d", y, x, d));
-                }
-            }
-        }
-        
-        return digits;
+    /***
+     * Show a digit of the solution in a cell, keeping the other cells.
+     * 
+     * @param x
+     *            The column of the cell, in range 0..8.
+     * @param y
+     *            The row of the cell, in range 0..8.
+     * @param digit
+     *            The digit in range 1..9, or 0 to clear.
+     */
+    public void setSolutionDigit(int x, int y, int digit) {
+        mSolution = mSolution.with(x, y, digit);
+        if (mFixedDigits.get(x, y) == 0) mMarks.setCell(x, y, digit);
+        // The pencil marks of the other cells in the units may change.
+        invalidateUnits(x, y);
     }
-    
-    private static byte[][] duplicateDigitsArray(byte[][] digits) {
-        final byte[][] a = new byte[9][9];
-        for (int i = 0; i < digits.length; i++) {
-            System.arraycopy(digits[i], 0, a[i], 0, 9);
+
+    public void setOnCellEditListener(OnCellEditListener listener) {
+        mOnCellEditListener = listener;
+    }
+
+    /***
+     * Highlight some fixed digits as conflicting.
+     * The highlight is cleared when the fixed digits are changed.
+     * 
+     * @param conflicts
+     *            A 9x9 mask of the fixed digits to highlight, or null to clear.
+     */
+    public void setConflicts(boolean[][] conflicts) {
+        mConflicts = conflicts;
+        invalidate();
+    }
+
+    /***
+     * Indicates whether a digit appears twice or more in a row, a column,
+     * or a block of the fixed digits, so that the puzzle has obviously no
+     * solution.  Such digits are highlighted as conflicting always.
+     * 
+     * @return True if the fixed digits break the rules.
+     */
+    public boolean hasConflicts() {
+        return mValidator.hasConflicts();
+    }
+
+    /***
+     * Load the digits shown into {@link #mMarks}.
+     */
+    private void loadMarks() {
+        final byte[] cells = new byte[9 * 9];
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = (byte)(mFixedDigits.get(i) > 0 ? mFixedDigits.get(i) : mSolution.get(i));
         }
-        return a;
+        mMarks.load(Grid.of(9, cells));
+    }
+
+    private static Grid checkGrid(Grid digits) {
+        if (digits.getSize() != 9) throw new IllegalArgumentException(String.format("digits' size must be 9 but %d", digits.getSize()));
+        return digits;
     }
     
     @Override
@@ -349,18 +444,60 @@ public class PuzzleEditorView extends View {
         path.lineTo(dx * -1.0f, dy * 0.1f);
         path.close();
         
-
+        updateBitmaps();
     }
 
-    private void drawPuzzle(Canvas canvas) {
+    /***
+     * Render the grid lines and the digits into bitmaps in the current size.
+     * A pencil mark takes one ninth of a cell.
+     */
+    private void updateBitmaps() {
+        if (mGridBitmap != null) {
+            mGridBitmap.recycle();
+            mDigitAtlas.recycle();
+            mCandidateAtlas.recycle();
+            mGridBitmap = mDigitAtlas = mCandidateAtlas = null;
+        }
+        final int dx = mDeltaX;
+        final int dy = mDeltaY;
+        final int mw = mMarkWidth = dx / 3;
+        final int mh = mMarkHeight = dy / 3;
+        if (mw <= 0 || mh <= 0) return;
+        
+        final int margin = mGridMargin = (Math.max(mMajorBorderWidth, mMinorBorderWidth) + 1) / 2 + 1;
+        final Bitmap grid = Bitmap.createBitmap(mSaneWidth + margin * 2, mSaneHeight + margin * 2, Bitmap.Config.ARGB_8888);
+        drawGrid(new Canvas(grid), margin, margin);
+        mGridBitmap = grid;
+        
+        mDigitAtlas = renderGlyphs(dx, dy, dy * mFontScale, mFontAdjuster);
+        mCandidateAtlas = renderGlyphs(mw, mh, mh * mFontScale, 0f);
+    }
+    
+    /***
+     * Render the nine digits in a row into a new alpha only bitmap,
+     * each centered in a box of the given size.
+     */
+    private Bitmap renderGlyphs(int w, int h, float textSize, float adjuster) {
+        final Bitmap atlas = Bitmap.createBitmap(w * 9, h, Bitmap.Config.ALPHA_8);
+        final Paint paint = new Paint();
+        paint.setAntiAlias(true);
+        paint.setTypeface(mTypeface);
+        paint.setTextAlign(Align.CENTER);
+        paint.setTextSize(textSize);
+        final FontMetrics m = paint.getFontMetrics();
+        final float cy = (h - m.ascent - m.descent) / 2f + adjuster;
+        final Canvas canvas = new Canvas(atlas);
+        for (int d = 1; d <= 9; d++) {
+            canvas.drawText(mDigitStrings[d], w * (d - 1) + w / 2f, cy, paint);
+        }
+        return atlas;
+    }
+    
+    private void drawGrid(Canvas canvas, int ox, int oy) {
         final int sw = mSaneWidth;
         final int sh = mSaneHeight;
-        final int ox = mOriginX;
-        final int oy = mOriginY; 
         final int dx = mDeltaX;
         final int dy = mDeltaY;
-        final float cx = mCharOffsetX;
-        final float cy = mCharOffsetY;
 
         final Paint paint = mPaint;
         
@@ -382,26 +519,78 @@ public class PuzzleEditorView extends View {
             canvas.drawLine(ox + 0,      oy + dy * i, ox + sw,     oy + dy * i, paint);
         }
         canvas.drawRect(ox, oy, ox + sw, oy + sh, paint);
+    }
+
+    private void drawPuzzle(Canvas canvas) {
+        if (mGridBitmap == null) return;
+        final int ox = mOriginX;
+        final int oy = mOriginY; 
+        final int dx = mDeltaX;
+        final int dy = mDeltaY;
+
+        final Paint paint = mPaint;
+        
+        canvas.drawBitmap(mGridBitmap, ox - mGridMargin, oy - mGridMargin, null);
         
         paint.setStyle(Style.FILL);
+        final boolean[][] conflicts = mConflicts;
+        final Rect clip = mClip;
+        canvas.getClipBounds(clip);
         for (int y = 0; y < 9; y++) {
-            final byte[] f = mFixedDigits[y];
-            final byte[] s = mSolution[y];
             for (int x = 0; x < 9; x++) {
+                if (!clip.intersects(ox + dx * x, oy + dy * y, ox + dx * (x + 1), oy + dy * (y + 1))) continue;
                 int d;
-                if (       (d = f[x]) > 0) {
-                    paint.setColor(mFixedDigitColor);
-                } else if ((d = s[x]) > 0) {
+                if (       (d = mFixedDigits.get(x, y)) > 0) {
+                    final boolean conflicting = (conflicts != null && conflicts[y][x]) || mValidator.isConflicting(x, y);
+                    paint.setColor(conflicting ? mConflictColor : mFixedDigitColor);
+                } else if ((d = mSolution.get(x, y)) > 0) {
                     paint.setColor(mSolutionColor);
                 }
                 if (d > 0) {
-                    canvas.drawText(mDigitStrings[d], ox + dx * x + cx, oy + dy * y + cy, paint);
+                    drawDigit(canvas, d, ox + dx * x, oy + dy * y, paint);
+                } else {
+                    drawCandidates(canvas, x, y);
                 }
             }
         }
     }
     
+    /***
+     * Draw a digit from {@link #mDigitAtlas} in a box of a cell size.
+     */
+    private void drawDigit(Canvas canvas, int d, float left, float top, Paint paint) {
+        final int dx = mDeltaX;
+        final int dy = mDeltaY;
+        mAtlasSrc.set(dx * (d - 1), 0, dx * d, dy);
+        mGlyphDst.set(left, top, left + dx, top + dy);
+        canvas.drawBitmap(mDigitAtlas, mAtlasSrc, mGlyphDst, paint);
+    }
+    
+    /***
+     * Draw the candidates of an empty cell as pencil marks,
+     * placing each digit at the same position as on the digit pad.
+     */
+    private void drawCandidates(Canvas canvas, int x, int y) {
+        final Bitmap atlas = mCandidateAtlas;
+        final int candidates = mMarks.getCandidates(x, y);
+        if (atlas == null || candidates == 0) return;
+        
+        final int mw = mMarkWidth;
+        final int mh = mMarkHeight;
+        final int x0 = mOriginX + mDeltaX * x + (mDeltaX - mw * 3) / 2;
+        final int y0 = mOriginY + mDeltaY * y + (mDeltaY - mh * 3) / 2;
+        final Paint paint = mPaint;
+        paint.setColor(mCandidateColor);
+        for (int k = 0; k < 9; k++) {
+            if ((candidates & (1 << k)) == 0) continue;
+            mAtlasSrc.set(mw * k, 0, mw * (k + 1), mh);
+            mAtlasDst.set(x0 + mw * (k % 3), y0 + mh * (k / 3), x0 + mw * (k % 3 + 1), y0 + mh * (k / 3 + 1));
+            canvas.drawBitmap(atlas, mAtlasSrc, mAtlasDst, paint);
+        }
+    }
+    
     private void drawFocusPad(Canvas canvas) {
+        if (mDigitAtlas == null) return;
         final int ox = mOriginX;
         final int oy = mOriginY; 
         final int dx = mDeltaX;
@@ -423,7 +612,7 @@ public class PuzzleEditorView extends View {
         updatePadOrigin();
         final float px = mPadOriginX;
         final float py = mPadOriginY;
-        final float mm = dx * 0.2f; // XXX
+        final float mm = dx * mPadMargin;
         
         paint.setStyle(Style.FILL);
         paint.setColor(Color.LTGRAY);
@@ -440,7 +629,7 @@ public class PuzzleEditorView extends View {
                 paint.setStyle(Style.STROKE);
                 canvas.drawRect(px + dx * j, py + dy * i, px + dx * (j + 1), py + dy * (i + 1), paint);
                 paint.setStyle(Style.FILL);
-                canvas.drawText(mDigitStrings[i * 3 + j + 1], px + dx * j + cx, py + dy * i + cy, paint);
+                drawDigit(canvas, i * 3 + j + 1, px + dx * j, py + dy * i, paint);
             }
         }
         
@@ -471,6 +660,56 @@ public class PuzzleEditorView extends View {
         mPadOriginY = y;
     }
 
+    /***
+     * Invalidate a rectangular range of cells, including the borders
+     * around them.
+     */
+    private void invalidateCells(int x0, int y0, int x1, int y1) {
+        if (mGridBitmap == null) {
+            invalidate();
+            return;
+        }
+        final int m = Math.max(mGridMargin, mFocusBorderWidth);
+        invalidate(mOriginX + mDeltaX * x0 - m,       mOriginY + mDeltaY * y0 - m,
+                   mOriginX + mDeltaX * (x1 + 1) + m, mOriginY + mDeltaY * (y1 + 1) + m);
+    }
+    
+    /***
+     * Invalidate the row, the column, and the block of a cell,
+     * i.e., the cells whose conflicts or candidates a change in the cell may affect.
+     */
+    private void invalidateUnits(int x, int y) {
+        final int bx = x / 3 * 3;
+        final int by = y / 3 * 3;
+        invalidateCells(0, y, 8, y);
+        invalidateCells(x, 0, x, 8);
+        invalidateCells(bx, by, bx + 2, by + 2);
+    }
+    
+    /***
+     * Invalidate the focused cell and the pad floating by it, if any.
+     */
+    private void invalidateFocus() {
+        if (mFocusX < 0 || mFocusY < 0) return;
+        if (mGridBitmap == null) {
+            invalidate();
+            return;
+        }
+        final int dx = mDeltaX;
+        final int dy = mDeltaY;
+        final int m = mFocusBorderWidth + 1;
+        final int x0 = mOriginX + dx * mFocusX;
+        final int y0 = mOriginY + dy * mFocusY;
+        updatePadOrigin();
+        final float mm = dx * mPadMargin + 1;
+        final float px = mPadOriginX;
+        final float py = mPadOriginY;
+        invalidate(Math.min(x0 - m,      (int)Math.floor(px - mm)),
+                   Math.min(y0 - m,      (int)Math.floor(py - mm)),
+                   Math.max(x0 + dx + m, (int)Math.ceil(px + dx * 3 + mm)),
+                   Math.max(y0 + dy + m, (int)Math.ceil(py + dy * 4 + mm)));
+    }
+
     @Override
     public boolean onTouchEvent(MotionEvent event) {
         switch (event.getAction()) {
@@ -514,8 +753,21 @@ public class PuzzleEditorView extends View {
                         // It is on the pad.
                         int d = x + y * 3 + 1;
                         if (d > 9) d = 0;
-                        mFixedDigits[mFocusY][mFocusX] = (byte)d;
+                        final int focusX = mFocusX;
+                        final int focusY = mFocusY;
+                        mFixedDigits = mFixedDigits.with(focusX, focusY, d);
+                        mValidator.setCell(focusX, focusY, d);
+                        mMarks.setCell(focusX, focusY, d > 0 ? d : mSolution.get(focusX, focusY));
+                        if (mConflicts != null) {
+                            mConflicts = null;
+                            invalidate();
+                        } else {
+                            invalidateUnits(focusX, focusY);
+                        }
                         resetCellFocus();
+                        if (mOnCellEditListener != null) {
+                            mOnCellEditListener.onCellEdit(this, focusX, focusY, d);
+                        }
                         return true;
                     }
                 }
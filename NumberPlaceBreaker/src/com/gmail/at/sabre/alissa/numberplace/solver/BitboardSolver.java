@@ -0,0 +1,393 @@
+package com.gmail.at.sabre.alissa.numberplace.solver;
+
+/***
+ * Solve a number place puzzle by a native backtracking search over bitmasks.
+ * <p>
+ * The digits in a cell, a row, a column, or a block are represented by a 9-bit
+ * mask, where the bit (d - 1) stands for the digit d. The search first fills
+ * all forced cells (naked singles and hidden singles), then tries each
+ * candidate of the cell that has the fewest candidates. All work areas are
+ * allocated when an instance is created, so the search allocates nothing.
+ * <p>
+ * It is a lot faster than {@link PuzzleSolver} for a usual puzzle, since it
+ * doesn't need to build a SAT instance at all.
+ *
+ * @author alissa
+ */
+public class BitboardSolver implements SolverEngine {
+
+    /***
+     * The dimension of the basic block.
+     */
+    private static final int N = 3;
+
+    /***
+     * The dimension (i.e., both the height and the width) of the whole puzzle.
+     */
+    private static final int NN = N * N;
+
+    /***
+     * The number of cells in a puzzle.
+     */
+    private static final int CELLS = NN * NN;
+
+    /***
+     * A bitmask to represent all digits.
+     */
+    private static final int ALL = (1 << NN) - 1;
+
+    /***
+     * The cells in each unit. UNITS[u] lists the cell indexes of the unit u,
+     * where u in 0..8 is a row, in 9..17 is a column, and in 18..26 is a
+     * block. A cell index is y * 9 + x for the cell at (x,y).
+     */
+    private static final int[][] UNITS = new int[NN * 3][NN];
+
+    /***
+     * The row of each cell.
+     */
+    private static final int[] ROW = new int[CELLS];
+
+    /***
+     * The column of each cell.
+     */
+    private static final int[] COL = new int[CELLS];
+
+    /***
+     * The block of each cell.
+     */
+    private static final int[] BOX = new int[CELLS];
+
+    static {
+        for (int i = 0; i < CELLS; i++) {
+            final int x = i % NN;
+            final int y = i / NN;
+            final int b = y / N * N + x / N;
+            ROW[i] = y;
+            COL[i] = x;
+            BOX[i] = b;
+            UNITS[y][x] = i;
+            UNITS[NN + x][y] = i;
+            UNITS[NN * 2 + b][y % N * N + x % N] = i;
+        }
+    }
+
+    private volatile boolean mIsStopped;
+
+    /***
+     * The digit in each cell, or 0 if the cell is empty.
+     */
+    private final int[] mCells = new int[CELLS];
+
+    /***
+     * The digits used in each row.
+     */
+    private final int[] mRowUsed = new int[NN];
+
+    /***
+     * The digits used in each column.
+     */
+    private final int[] mColUsed = new int[NN];
+
+    /***
+     * The digits used in each block.
+     */
+    private final int[] mBoxUsed = new int[NN];
+
+    /***
+     * The cells filled so far, in the order of filling, to undo them on
+     * backtracking.
+     */
+    private final int[] mTrail = new int[CELLS];
+
+    private int mTrailSize;
+
+    /***
+     * The first solution found by the search.
+     */
+    private final int[] mSolution = new int[CELLS];
+
+    /***
+     * The number of solutions found by the search.
+     */
+    private int mCount;
+
+    /***
+     * The number of solutions the search should find before it stops.
+     */
+    private int mLimit;
+
+    // public methods
+
+    /***
+     * Solve a number place puzzle.
+     *
+     * @param puzzle
+     *            The puzzle to solve.
+     * @return A solution, or null if no solution was found.
+     */
+    public synchronized byte[][] solve(final byte[][] puzzle) {
+        mIsStopped = false;
+        if (!setup(puzzle)) return null;
+
+        mCount = 0;
+        mLimit = 1;
+        search();
+
+        if (mIsStopped || mCount == 0) return null;
+        return extractSolution();
+    }
+
+    /***
+     * Count the solutions of a number place puzzle, up to a limit. The search
+     * is the same as {@link #solve(byte[][])}, but goes on after a solution
+     * until the limit is reached.
+     *
+     * @param puzzle
+     *            The puzzle.
+     * @param limit
+     *            The maximum number of solutions to count.
+     * @return The number of solutions, which is no more than limit.
+     */
+    public synchronized int countSolutions(final byte[][] puzzle, final int limit) {
+        mIsStopped = false;
+        if (!setup(puzzle)) return 0;
+
+        mCount = 0;
+        mLimit = limit;
+        if (limit > 0) search();
+
+        return mCount;
+    }
+
+    /***
+     * Stop solving the puzzle. This method is intended to be invoked by a
+     * thread when another thread is executing {@link #solve(byte[][])} or
+     * {@link #countSolutions(byte[][], int)}. The search soon stops, and
+     * {@link #solve(byte[][])} returns null, or
+     * {@link #countSolutions(byte[][], int)} returns the number of solutions
+     * found so far. This method itself returns very soon.
+     */
+    public void stop() {
+        mIsStopped = true;
+    }
+
+    /***
+     * Indicates whether the recent invocation of {@link #solve(byte[][])} has
+     * stopped by {@link #stop()}.
+     *
+     * @return true if stopped.
+     */
+    public boolean isStopped() {
+        return mIsStopped;
+    }
+
+    // Search
+
+    /***
+     * Clear the work area and fill the givens.
+     *
+     * @param puzzle
+     *            The puzzle instance.
+     * @return False if the givens have a trivial contradiction.
+     */
+    private boolean setup(final byte[][] puzzle) {
+        for (int i = 0; i < CELLS; i++) mCells[i] = 0;
+        for (int i = 0; i < NN; i++) {
+            mRowUsed[i] = 0;
+            mColUsed[i] = 0;
+            mBoxUsed[i] = 0;
+        }
+        mTrailSize = 0;
+
+        for (int y = 0; y < NN; y++) {
+            for (int x = 0; x < NN; x++) {
+                final int d = puzzle[y][x];
+                if (d > 0) {
+                    final int i = y * NN + x;
+                    if ((candidates(i) & (1 << (d - 1))) == 0) return false;
+                    assign(i, d);
+                }
+            }
+        }
+        return true;
+    }
+
+    /***
+     * Search for solutions recursively. It fills forced cells first, then
+     * chooses a cell with the fewest candidates and tries each of them.
+     * Solutions are counted in {@link #mCount}, and the first one is copied
+     * into {@link #mSolution}. All cells filled in this method are cleared
+     * upon return.
+     *
+     * @return True if the search should stop, because {@link #mLimit}
+     *         solutions were found or {@link #stop()} was requested.
+     */
+    private boolean search() {
+        if (mIsStopped) return true;
+
+        final int mark = mTrailSize;
+        boolean done = false;
+
+        if (propagate()) {
+
+            // Find the most constrained cell.
+            int best = -1;
+            int bestCount = NN + 1;
+            for (int i = 0; i < CELLS; i++) {
+                if (mCells[i] == 0) {
+                    final int count = Integer.bitCount(candidates(i));
+                    if (count < bestCount) {
+                        best = i;
+                        bestCount = count;
+                        if (count <= 2) break;
+                    }
+                }
+            }
+
+            if (best < 0) {
+                // All cells are filled.  It is a solution.
+                if (mCount == 0) {
+                    System.arraycopy(mCells, 0, mSolution, 0, CELLS);
+                }
+                mCount++;
+                done = mCount >= mLimit;
+            } else {
+                int m = candidates(best);
+                while (m != 0 && !done) {
+                    final int bit = m & -m;
+                    m ^= bit;
+                    final int inner = mTrailSize;
+                    assign(best, Integer.numberOfTrailingZeros(bit) + 1);
+                    done = search();
+                    undo(inner);
+                }
+            }
+        }
+
+        undo(mark);
+        return done;
+    }
+
+    /***
+     * Fill all cells that are forced by naked singles (a cell with only one
+     * candidate) and hidden singles (a digit with only one possible cell in
+     * a unit), repeatedly until no more cells are filled.
+     *
+     * @return False if a contradiction was found.
+     */
+    private boolean propagate() {
+        boolean changed;
+        do {
+            changed = false;
+
+            // Naked singles.
+            for (int i = 0; i < CELLS; i++) {
+                if (mCells[i] == 0) {
+                    final int m = candidates(i);
+                    if (m == 0) return false;
+                    if ((m & (m - 1)) == 0) {
+                        assign(i, Integer.numberOfTrailingZeros(m) + 1);
+                        changed = true;
+                    }
+                }
+            }
+
+            // Hidden singles.
+            for (int u = 0; u < UNITS.length; u++) {
+                final int[] unit = UNITS[u];
+                int used = 0;
+                int once = 0;
+                int twice = 0;
+                for (int k = 0; k < NN; k++) {
+                    final int i = unit[k];
+                    final int d = mCells[i];
+                    if (d > 0) {
+                        used |= 1 << (d - 1);
+                    } else {
+                        final int m = candidates(i);
+                        twice |= once & m;
+                        once |= m;
+                    }
+                }
+                if ((used | once) != ALL) return false;
+
+                int hidden = once & ~twice;
+                while (hidden != 0) {
+                    final int bit = hidden & -hidden;
+                    hidden ^= bit;
+                    int k = 0;
+                    while (k < NN && (mCells[unit[k]] != 0 || (candidates(unit[k]) & bit) == 0)) k++;
+                    if (k == NN) return false;
+                    assign(unit[k], Integer.numberOfTrailingZeros(bit) + 1);
+                    changed = true;
+                }
+            }
+
+        } while (changed);
+
+        return true;
+    }
+
+    /***
+     * Return the candidates of a cell, i.e., the digits not used in the row,
+     * the column, or the block of the cell.
+     *
+     * @param i
+     *            The cell index.
+     * @return The candidates as a bitmask.
+     */
+    private int candidates(final int i) {
+        return ALL & ~(mRowUsed[ROW[i]] | mColUsed[COL[i]] | mBoxUsed[BOX[i]]);
+    }
+
+    /***
+     * Put a digit in a cell.
+     *
+     * @param i
+     *            The cell index.
+     * @param d
+     *            The digit in range 1..9.
+     */
+    private void assign(final int i, final int d) {
+        final int bit = 1 << (d - 1);
+        mCells[i] = d;
+        mRowUsed[ROW[i]] |= bit;
+        mColUsed[COL[i]] |= bit;
+        mBoxUsed[BOX[i]] |= bit;
+        mTrail[mTrailSize++] = i;
+    }
+
+    /***
+     * Clear the cells filled after a point.
+     *
+     * @param mark
+     *            The size of the trail at the point.
+     */
+    private void undo(final int mark) {
+        while (mTrailSize > mark) {
+            final int i = mTrail[--mTrailSize];
+            final int bit = ~(1 << (mCells[i] - 1));
+            mCells[i] = 0;
+            mRowUsed[ROW[i]] &= bit;
+            mColUsed[COL[i]] &= bit;
+            mBoxUsed[BOX[i]] &= bit;
+        }
+    }
+
+    // Handling results.
+
+    /***
+     * Extract the first solution found by the search in a number place puzzle
+     * format.
+     *
+     * @return The extracted solution.
+     */
+    private byte[][] extractSolution() {
+        final byte[][] solution = new byte[NN][NN];
+        for (int i = 0; i < CELLS; i++) {
+            solution[i / NN][i % NN] = (byte)mSolution[i];
+        }
+        return solution;
+    }
+}
@@ -0,0 +1,114 @@
+package com.gmail.at.sabre.alissa.numberplace.solver;
+
+/***
+ * A limit on the effort to solve a puzzle, for
+ * {@link PuzzleSolver#solve(byte[][], Budget)}.
+ * <p>
+ * A budget is either wall clock time, the number of conflicts, or the number
+ * of propagations of the SAT solver. When the budget runs out, solving gives
+ * up with {@link SolveResult.Outcome#TIMED_OUT}, so that the caller can fall
+ * back to something else, e.g., another engine or a cached answer. Only the
+ * time limit covers the whole solving; the others count the SAT search only.
+ *
+ * @author alissa
+ */
+public final class Budget {
+
+    /***
+     * The kind of a budget.
+     */
+    public enum Kind {
+
+        /***
+         * No limit.
+         */
+        UNLIMITED,
+
+        /***
+         * Wall clock time in milliseconds.
+         */
+        MILLISECONDS,
+
+        /***
+         * The number of conflicts the SAT solver meets.
+         */
+        CONFLICTS,
+
+        /***
+         * The number of literals the SAT solver propagates.
+         */
+        PROPAGATIONS,
+    }
+
+    /***
+     * The budget with no limit.
+     */
+    public static final Budget UNLIMITED = new Budget(Kind.UNLIMITED, 0);
+
+    private final Kind mKind;
+
+    private final long mLimit;
+
+    private Budget(final Kind kind, final long limit) {
+        if (limit < 0) throw new IllegalArgumentException("limit must not be negative");
+        mKind = kind;
+        mLimit = limit;
+    }
+
+    /***
+     * Create a budget of wall clock time.
+     *
+     * @param ms
+     *            The time in milliseconds.
+     * @return The budget.
+     */
+    public static Budget milliseconds(final long ms) {
+        return new Budget(Kind.MILLISECONDS, ms);
+    }
+
+    /***
+     * Create a budget of conflicts.
+     *
+     * @param conflicts
+     *            The number of conflicts.
+     * @return The budget.
+     */
+    public static Budget conflicts(final int conflicts) {
+        return new Budget(Kind.CONFLICTS, conflicts);
+    }
+
+    /***
+     * Create a budget of propagations.
+     *
+     * @param propagations
+     *            The number of propagations.
+     * @return The budget.
+     */
+    public static Budget propagations(final long propagations) {
+        return new Budget(Kind.PROPAGATIONS, propagations);
+    }
+
+    /***
+     * Return the kind of this budget.
+     *
+     * @return The kind.
+     */
+    public Kind getKind() {
+        return mKind;
+    }
+
+    /***
+     * Return the limit of this budget.
+     *
+     * @return The limit in the unit of the kind, or 0 for
+     *         {@link Kind#UNLIMITED}.
+     */
+    public long getLimit() {
+        return mLimit;
+    }
+
+    @Override
+    public String toString() {
+        return mKind == Kind.UNLIMITED ? "UNLIMITED" : mKind + "(" + mLimit + ")";
+    }
+}
@@ -0,0 +1,152 @@
+package com.gmail.at.sabre.alissa.numberplace.solver;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/***
+ * A solver engine that remembers the solutions of recently solved puzzles and
+ * reuses them for equivalent puzzles.
+ * <p>
+ * Puzzles are keyed by their canonical forms (see {@link Canonicalizer}), so a
+ * puzzle that is another one with digits relabelled, transposed, or rows and
+ * columns permuted within the rules hits the cache, too. A cached solution is
+ * mapped back through the inverse transformation. The least recently used
+ * entry is evicted when the cache is full. Puzzles with no solution are cached
+ * as well.
+ * <p>
+ * Only standard nine by nine puzzles are supported.
+ *
+ * @author alissa
+ */
+public class CachingSolver implements SolverEngine {
+
+    /***
+     * The cache entry for a puzzle with no solution.
+     */
+    private static final byte[][] UNSOLVABLE = new byte[0][];
+
+    /***
+     * The engine to solve puzzles not in the cache.
+     */
+    private final SolverEngine mEngine;
+
+    private final Canonicalizer mCanonicalizer = new Canonicalizer();
+
+    /***
+     * The solutions of canonical puzzles, in the least recently used first
+     * order.
+     */
+    private final Map<String, byte[][]> mCache;
+
+    private int mHitCount;
+
+    private int mMissCount;
+
+    /***
+     * Create a caching solver.
+     *
+     * @param engine
+     *            The engine to solve puzzles not in the cache.
+     * @param capacity
+     *            The maximum number of puzzles to remember.
+     */
+    public CachingSolver(final SolverEngine engine, final int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be positive");
+        mEngine = engine;
+        mCache = new LinkedHashMap<String, byte[][]>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, byte[][]> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    // public methods
+
+    /***
+     * Solve a number place puzzle, or find its solution in the cache.
+     *
+     * @param puzzle
+     *            The puzzle to solve.
+     * @return A solution, or null if no solution was found.
+     */
+    public synchronized byte[][] solve(final byte[][] puzzle) {
+        final Canonicalizer canonicalizer = mCanonicalizer;
+        final String key = canonicalizer.canonicalize(puzzle);
+
+        byte[][] solution = mCache.get(key);
+        if (solution != null) {
+            mHitCount++;
+        } else {
+            mMissCount++;
+            solution = mEngine.solve(canonicalizer.getCanonicalPuzzle());
+            if (mEngine.isStopped()) return null;
+            if (solution == null) solution = UNSOLVABLE;
+            mCache.put(key, solution);
+        }
+
+        return solution == UNSOLVABLE ? null : canonicalizer.fromCanonical(solution);
+    }
+
+    /***
+     * Count the solutions of a number place puzzle, up to a limit, by the
+     * underlying engine. The counts are not cached.
+     *
+     * @param puzzle
+     *            The puzzle.
+     * @param limit
+     *            The maximum number of solutions to count.
+     * @return The number of solutions, which is no more than limit.
+     */
+    public int countSolutions(final byte[][] puzzle, final int limit) {
+        return mEngine.countSolutions(puzzle, limit);
+    }
+
+    /***
+     * Stop solving the puzzle by the underlying engine. See
+     * {@link SolverEngine#stop()}.
+     */
+    public void stop() {
+        mEngine.stop();
+    }
+
+    /***
+     * Indicates whether the recent invocation of the underlying engine has
+     * stopped by {@link #stop()}.
+     *
+     * @return true if stopped.
+     */
+    public boolean isStopped() {
+        return mEngine.isStopped();
+    }
+
+    /***
+     * Return the number of puzzles whose solutions were found in the cache.
+     *
+     * @return The number of cache hits.
+     */
+    public synchronized int getHitCount() {
+        return mHitCount;
+    }
+
+    /***
+     * Return the number of puzzles solved by the engine because they were not
+     * in the cache.
+     *
+     * @return The number of cache misses.
+     */
+    public synchronized int getMissCount() {
+        return mMissCount;
+    }
+
+    /***
+     * Forget all cached solutions and reset the counters.
+     */
+    public synchronized void clear() {
+        mCache.clear();
+        mHitCount = 0;
+        mMissCount = 0;
+    }
+}
@@ -0,0 +1,344 @@
+package com.gmail.at.sabre.alissa.numberplace.solver;
+
+/***
+ * The state of a number place puzzle being solved by logic, i.e., the digits
+ * filled so far and the candidates of the other cells.
+ * <p>
+ * The candidates of a cell are represented by a bitmask, where the bit (d - 1)
+ * stands for the digit d. Filling a digit in a cell eliminates it
+ * from the candidates of the peers (the other cells in the same row, column,
+ * or block) at once, so the candidates are always up to date.
+ * <p>
+ * A cell is identified by its index y * 9 + x for the cell at (x,y) in a
+ * standard nine by nine puzzle. Larger puzzles, e.g., 16 by 16, are also
+ * supported, and the index is y * 16 + x for them.
+ *
+ * @author alissa
+ */
+public class CandidateGrid {
+
+    /***
+     * The dimension of the basic block.
+     * It is 3 for a standard Number Place puzzle.
+     */
+    private final int mN;
+
+    /***
+     * The dimension (i.e., both the height and the width) of the whole puzzle.
+     * It is 9 for a standard Number Place puzzle.
+     */
+    private final int mNN;
+
+    /***
+     * The number of cells in a puzzle.
+     */
+    private final int mCellCount;
+
+    /***
+     * A bitmask to represent all digits.
+     */
+    private final int mAll;
+
+    /***
+     * The cells in each unit. mUnits[u] lists the cell indexes of the unit u,
+     * where u in 0..NN-1 is a row, in NN..2NN-1 is a column, and in
+     * 2NN..3NN-1 is a block.
+     */
+    private final int[][] mUnits;
+
+    /***
+     * The peers of each cell, i.e., the other cells that share a unit with
+     * the cell.
+     */
+    private final int[][] mPeers;
+
+    /***
+     * The digit in each cell, or 0 if the cell is empty.
+     */
+    private final int[] mDigits;
+
+    /***
+     * The candidates of each cell. It is 0 for a filled cell.
+     */
+    private final int[] mCandidates;
+
+    /***
+     * The number of filled cells.
+     */
+    private int mFilled;
+
+    /***
+     * Create a grid for a standard nine by nine puzzle.
+     */
+    public CandidateGrid() {
+        this(3);
+    }
+
+    /***
+     * Create a grid for a puzzle of any size.
+     *
+     * @param n
+     *            The dimension of the basic block, in range 2..5. The whole
+     *            puzzle is n * n by n * n cells.
+     */
+    public CandidateGrid(final int n) {
+        if (n < 2 || n > 5) throw new IllegalArgumentException(String.format("n must be in range 2..5 but %d", n));
+
+        final int nn = n * n;
+        final int cells = nn * nn;
+        mN = n;
+        mNN = nn;
+        mCellCount = cells;
+        mAll = (1 << nn) - 1;
+        mDigits = new int[cells];
+        mCandidates = new int[cells];
+
+        final int[][] units = mUnits = new int[nn * 3][nn];
+        final int[][] unitsOf = new int[cells][3];
+        for (int i = 0; i < cells; i++) {
+            final int x = i % nn;
+            final int y = i / nn;
+            final int b = y / n * n + x / n;
+            units[y][x] = i;
+            units[nn + x][y] = i;
+            units[nn * 2 + b][y % n * n + x % n] = i;
+            unitsOf[i][0] = y;
+            unitsOf[i][1] = nn + x;
+            unitsOf[i][2] = nn * 2 + b;
+        }
+
+        mPeers = new int[cells][];
+        final boolean[] seen = new boolean[cells];
+        for (int i = 0; i < cells; i++) {
+            final int[] peers = new int[(nn - 1) * 2 + (n - 1) * (n - 1)];
+            int k = 0;
+            for (int u : unitsOf[i]) {
+                for (int j : units[u]) {
+                    if (j != i && !seen[j]) {
+                        seen[j] = true;
+                        peers[k++] = j;
+                    }
+                }
+            }
+            for (int j : peers) seen[j] = false;
+            mPeers[i] = peers;
+        }
+    }
+
+    /***
+     * Return the dimension of the basic block.
+     *
+     * @return The dimension, 3 for a standard puzzle.
+     */
+    public int getBlockSize() {
+        return mN;
+    }
+
+    /***
+     * Return the dimension of the whole puzzle, i.e., the number of digits.
+     *
+     * @return The dimension, 9 for a standard puzzle.
+     */
+    public int getSize() {
+        return mNN;
+    }
+
+    /***
+     * Return the index of a cell.
+     *
+     * @param x
+     *            X position of the cell.
+     * @param y
+     *            Y position of the cell.
+     * @return The cell index.
+     */
+    public int cell(final int x, final int y) {
+        return y * mNN + x;
+    }
+
+    /***
+     * Return the cells in each unit, i.e., each row, column, and block.
+     *
+     * @return The cell indexes of the units. The caller must not modify it.
+     */
+    int[][] getUnits() {
+        return mUnits;
+    }
+
+    /***
+     * Clear all cells, then fill the givens of a puzzle.
+     *
+     * @param puzzle
+     *            The puzzle.
+     * @return False if the givens have a contradiction.
+     */
+    public boolean load(final byte[][] puzzle) {
+        for (int i = 0; i < mCellCount; i++) {
+            mDigits[i] = 0;
+            mCandidates[i] = mAll;
+        }
+        mFilled = 0;
+
+        for (int y = 0; y < mNN; y++) {
+            for (int x = 0; x < mNN; x++) {
+                final int d = puzzle[y][x];
+                if (d > 0 && !place(cell(x, y), d)) return false;
+            }
+        }
+        return true;
+    }
+
+    /***
+     * Fill a digit in a cell and eliminate it from the candidates of the
+     * peers.
+     *
+     * @param i
+     *            The cell index.
+     * @param d
+     *            The digit in range 1..9 (or larger for a larger puzzle.)
+     * @return False if the digit is not a candidate of the cell, or a peer
+     *         lost all of its candidates.
+     */
+    public boolean place(final int i, final int d) {
+        if (mDigits[i] != 0) return mDigits[i] == d;
+
+        final int bit = 1 << (d - 1);
+        if ((mCandidates[i] & bit) == 0) return false;
+
+        mDigits[i] = d;
+        mCandidates[i] = 0;
+        mFilled++;
+
+        boolean ok = true;
+        for (int j : mPeers[i]) {
+            if (mDigits[j] == 0 && (mCandidates[j] &= ~bit) == 0) ok = false;
+        }
+        return ok;
+    }
+
+    /***
+     * Eliminate some candidates from an empty cell.
+     *
+     * @param i
+     *            The cell index.
+     * @param mask
+     *            The candidates to eliminate.
+     * @return False if the cell lost all of its candidates.
+     */
+    public boolean eliminate(final int i, final int mask) {
+        if (mDigits[i] != 0) return true;
+        return (mCandidates[i] &= ~mask) != 0;
+    }
+
+    /***
+     * Fill all cells that are forced by naked singles (a cell with only one
+     * candidate) and hidden singles (a digit with only one possible cell in a
+     * unit), repeatedly until no more cells are filled.
+     *
+     * @return The number of cells filled, or -1 if a contradiction was
+     *         found.
+     */
+    public int fillSingles() {
+        final int start = mFilled;
+        boolean changed;
+        do {
+            changed = false;
+
+            // Naked singles.
+            for (int i = 0; i < mCellCount; i++) {
+                if (mDigits[i] == 0) {
+                    final int m = mCandidates[i];
+                    if (m == 0) return -1;
+                    if ((m & (m - 1)) == 0) {
+                        if (!place(i, Integer.numberOfTrailingZeros(m) + 1)) return -1;
+                        changed = true;
+                    }
+                }
+            }
+
+            // Hidden singles.
+            for (int u = 0; u < mUnits.length; u++) {
+                final int[] unit = mUnits[u];
+                int used = 0;
+                int once = 0;
+                int twice = 0;
+                for (int i : unit) {
+                    if (mDigits[i] > 0) {
+                        used |= 1 << (mDigits[i] - 1);
+                    } else {
+                        twice |= once & mCandidates[i];
+                        once |= mCandidates[i];
+                    }
+                }
+                if ((used | once) != mAll) return -1;
+
+                int hidden = once & ~twice;
+                while (hidden != 0) {
+                    final int bit = hidden & -hidden;
+                    hidden ^= bit;
+                    int k = 0;
+                    while (k < mNN && (mCandidates[unit[k]] & bit) == 0) k++;
+                    if (k == mNN) return -1;
+                    if (!place(unit[k], Integer.numberOfTrailingZeros(bit) + 1)) return -1;
+                    changed = true;
+                }
+            }
+
+        } while (changed);
+
+        return mFilled - start;
+    }
+
+    /***
+     * Return the digit in a cell.
+     *
+     * @param i
+     *            The cell index.
+     * @return The digit, or 0 if the cell is empty.
+     */
+    public int getDigit(final int i) {
+        return mDigits[i];
+    }
+
+    /***
+     * Return the candidates of a cell.
+     *
+     * @param i
+     *            The cell index.
+     * @return The candidates as a bitmask, or 0 if the cell is filled.
+     */
+    public int getCandidates(final int i) {
+        return mCandidates[i];
+    }
+
+    /***
+     * Return the number of filled cells.
+     *
+     * @return The number of filled cells.
+     */
+    public int getFilledCount() {
+        return mFilled;
+    }
+
+    /***
+     * Indicates whether all cells are filled.
+     *
+     * @return True if solved.
+     */
+    public boolean isSolved() {
+        return mFilled == mCellCount;
+    }
+
+    /***
+     * Return the digits in a number place puzzle format.
+     *
+     * @return The digits, 0 for empty cells.
+     */
+    public byte[][] toArray() {
+        final byte[][] a = new byte[mNN][mNN];
+        for (int i = 0; i < mCellCount; i++) {
+            a[i / mNN][i % mNN] = (byte)mDigits[i];
+        }
+        return a;
+    }
+}
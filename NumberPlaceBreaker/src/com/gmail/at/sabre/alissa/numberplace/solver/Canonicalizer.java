@@ -0,0 +1,387 @@
+package com.gmail.at.sabre.alissa.numberplace.solver;
+
+/***
+ * Compute the canonical form of a number place puzzle under its symmetry
+ * group, i.e., transposition, permutations of bands (and stacks), permutations
+ * of rows in a band (and columns in a stack), and relabelling of digits.
+ * <p>
+ * The canonical form is the lexicographically smallest puzzle among all
+ * transformed ones, where the digits are relabelled in the order of their
+ * first appearance and an empty cell is smaller than any digit. Two puzzles
+ * have the same canonical form if and only if one is a transformation of the
+ * other, so the canonical form can be a key to share work among equivalent
+ * puzzles. After {@link #canonicalize(byte[][])}, an instance remembers the
+ * transformation to map a grid to the canonical frame and back.
+ * <p>
+ * The smallest form is found by a branch and bound search: the column
+ * arrangements (transposition, stacks, and columns in a stack) are enumerated,
+ * and the rows for each arrangement are chosen one by one, abandoning a
+ * choice as soon as the row makes the form larger than the best one so far.
+ * Only standard nine by nine puzzles are supported.
+ *
+ * @author alissa
+ */
+public class Canonicalizer {
+
+    /***
+     * The dimension of the basic block.
+     */
+    private static final int N = 3;
+
+    /***
+     * The dimension (i.e., both the height and the width) of the whole puzzle.
+     */
+    private static final int NN = N * N;
+
+    /***
+     * The number of cells in a puzzle.
+     */
+    private static final int CELLS = NN * NN;
+
+    /***
+     * All permutations of three items.
+     */
+    private static final int[][] PERMUTATIONS = {
+        { 0, 1, 2 }, { 0, 2, 1 }, { 1, 0, 2 }, { 1, 2, 0 }, { 2, 0, 1 }, { 2, 1, 0 },
+    };
+
+    /***
+     * The puzzle being canonicalized, as is (index 0) and transposed (index
+     * 1.) The cell (x,y) is at y * 9 + x.
+     */
+    private final int[][] mSource = new int[2][CELLS];
+
+    /***
+     * A bitmask of empty rows of {@link #mSource}, for each of the two.
+     * Interchangeable empty rows (and columns, which are rows of the other) are
+     * tried in one order only.
+     */
+    private final int[] mEmptyRows = new int[2];
+
+    /***
+     * Whether the current arrangement uses the transposed puzzle.
+     */
+    private int mTranspose;
+
+    /***
+     * The source column of each target column in the current arrangement.
+     */
+    private final int[] mColumns = new int[NN];
+
+    /***
+     * The source row of each target row chosen so far.
+     */
+    private final int[] mRows = new int[NN];
+
+    /***
+     * The relabelling of digits after each target row, i.e., mLabels[i][d] is
+     * the new label of the source digit d after i rows are chosen, or 0 if d
+     * has not appeared yet.
+     */
+    private final int[][] mLabels = new int[NN + 1][NN + 1];
+
+    /***
+     * The number of labels used after each target row.
+     */
+    private final int[] mLabelCount = new int[NN + 1];
+
+    /***
+     * The transformed puzzle being built.
+     */
+    private final int[] mCurrent = new int[CELLS];
+
+    // The best (smallest) transformation found so far.
+    private final int[] mBest = new int[CELLS];
+    private int mRecordCount;
+    private int mBestTranspose;
+    private final int[] mBestRows = new int[NN];
+    private final int[] mBestColumns = new int[NN];
+
+    /***
+     * The canonical label of each source digit. It is a permutation of 1..9
+     * including the digits not in the puzzle.
+     */
+    private final int[] mBestLabels = new int[NN + 1];
+
+    /***
+     * The inverse of {@link #mBestLabels}.
+     */
+    private final int[] mInverseLabels = new int[NN + 1];
+
+    // public methods
+
+    /***
+     * Compute the canonical form of a puzzle and remember the transformation.
+     *
+     * @param puzzle
+     *            The puzzle.
+     * @return The canonical form as a string of 81 characters, '0' for an
+     *         empty cell, suitable for a key of a map.
+     */
+    public String canonicalize(final byte[][] puzzle) {
+        for (int y = 0; y < NN; y++) {
+            for (int x = 0; x < NN; x++) {
+                mSource[0][y * NN + x] = puzzle[y][x];
+                mSource[1][x * NN + y] = puzzle[y][x];
+            }
+        }
+        mEmptyRows[0] = mEmptyRows[1] = 0;
+        for (int i = 0; i < NN; i++) {
+            boolean emptyRow = true, emptyColumn = true;
+            for (int j = 0; j < NN; j++) {
+                if (puzzle[i][j] != 0) emptyRow = false;
+                if (puzzle[j][i] != 0) emptyColumn = false;
+            }
+            if (emptyRow) mEmptyRows[0] |= 1 << i;
+            if (emptyColumn) mEmptyRows[1] |= 1 << i;
+        }
+        for (int i = 0; i < CELLS; i++) mBest[i] = Integer.MAX_VALUE;
+        for (int d = 0; d <= NN; d++) mLabels[0][d] = 0;
+        mLabelCount[0] = 0;
+
+        for (mTranspose = 0; mTranspose < 2; mTranspose++) {
+            for (int[] stacks : PERMUTATIONS) {
+                for (int[] p0 : PERMUTATIONS) {
+                    for (int[] p1 : PERMUTATIONS) {
+                        for (int[] p2 : PERMUTATIONS) {
+                            final int[][] p = { p0, p1, p2 };
+                            for (int j = 0; j < NN; j++) {
+                                mColumns[j] = stacks[j / N] * N + p[j / N][j % N];
+                            }
+                            if (isRedundant(mColumns, mEmptyRows[1 - mTranspose])) continue;
+                            searchRows(0, 0, false);
+                        }
+                    }
+                }
+            }
+        }
+
+        completeLabels();
+
+        final char[] key = new char[CELLS];
+        for (int i = 0; i < CELLS; i++) key[i] = (char)('0' + mBest[i]);
+        return new String(key);
+    }
+
+    /***
+     * Return the canonical form of the puzzle most recently canonicalized.
+     *
+     * @return The canonical puzzle.
+     */
+    public byte[][] getCanonicalPuzzle() {
+        final byte[][] puzzle = new byte[NN][NN];
+        for (int i = 0; i < CELLS; i++) {
+            puzzle[i / NN][i % NN] = (byte)mBest[i];
+        }
+        return puzzle;
+    }
+
+    /***
+     * Transform a grid (e.g., a solution of the original puzzle) in the same
+     * way as the puzzle most recently canonicalized.
+     *
+     * @param grid
+     *            The grid in the original frame.
+     * @return The grid in the canonical frame.
+     */
+    public byte[][] toCanonical(final byte[][] grid) {
+        final byte[][] result = new byte[NN][NN];
+        for (int i = 0; i < NN; i++) {
+            for (int j = 0; j < NN; j++) {
+                final int r = mBestRows[i];
+                final int c = mBestColumns[j];
+                final int d = mBestTranspose == 0 ? grid[r][c] : grid[c][r];
+                result[i][j] = (byte)mBestLabels[d];
+            }
+        }
+        return result;
+    }
+
+    /***
+     * Transform a grid (e.g., a solution of the canonical puzzle) back to the
+     * frame of the puzzle most recently canonicalized.
+     *
+     * @param grid
+     *            The grid in the canonical frame.
+     * @return The grid in the original frame.
+     */
+    public byte[][] fromCanonical(final byte[][] grid) {
+        final byte[][] result = new byte[NN][NN];
+        for (int i = 0; i < NN; i++) {
+            for (int j = 0; j < NN; j++) {
+                final int r = mBestRows[i];
+                final int c = mBestColumns[j];
+                final byte d = (byte)mInverseLabels[grid[i][j]];
+                if (mBestTranspose == 0) {
+                    result[r][c] = d;
+                } else {
+                    result[c][r] = d;
+                }
+            }
+        }
+        return result;
+    }
+
+    // Search
+
+    /***
+     * Choose the source rows for the target rows recursively, for the current
+     * column arrangement.
+     *
+     * @param i
+     *            The target row to choose the source for.
+     * @param used
+     *            A bitmask of the source rows already chosen.
+     * @param less
+     *            True if the rows chosen so far are already smaller than the
+     *            best transformation.
+     */
+    private void searchRows(final int i, final int used, final boolean less) {
+        if (i == NN) {
+            if (less) recordBest();
+            return;
+        }
+
+        final int[] source = mSource[mTranspose];
+        final int empty = mEmptyRows[mTranspose];
+        final int records = mRecordCount;
+        int tried = 0;
+        final int[] labels = mLabels[i + 1];
+        final int first, last;
+        if (i % N == 0) {
+            // Any row of an unused band.
+            first = 0;
+            last = NN;
+        } else {
+            // A row in the band of the previous row.
+            first = mRows[i - 1] / N * N;
+            last = first + N;
+        }
+
+        for (int r = first; r < last; r++) {
+            if ((used & (1 << r)) != 0) continue;
+            if (i % N == 0 && (used & (7 << (r / N * N))) != 0) continue;
+            if (isTried(r, tried, empty, i % N == 0)) continue;
+            tried |= 1 << r;
+
+            System.arraycopy(mLabels[i], 0, labels, 0, NN + 1);
+            int count = mLabelCount[i];
+
+            // Once a new best is recorded below this point, the rows chosen so
+            // far are no longer smaller than the best, but equal.
+            int cmp = less && mRecordCount == records ? -1 : 0;
+            for (int j = 0; j < NN; j++) {
+                final int d = source[r * NN + mColumns[j]];
+                int v = 0;
+                if (d > 0) {
+                    if (labels[d] == 0) labels[d] = ++count;
+                    v = labels[d];
+                }
+                mCurrent[i * NN + j] = v;
+                if (cmp == 0) {
+                    final int b = mBest[i * NN + j];
+                    if (v < b) {
+                        cmp = -1;
+                    } else if (v > b) {
+                        cmp = 1;
+                        break;
+                    }
+                }
+            }
+            if (cmp > 0) continue;
+
+            mRows[i] = r;
+            mLabelCount[i + 1] = count;
+            searchRows(i + 1, used | (1 << r), cmp < 0);
+        }
+    }
+
+    /***
+     * Indicates whether a source row is interchangeable with one already tried
+     * for the same target row, so that trying it gives nothing new. Two empty
+     * rows in a band are interchangeable, and so are two empty bands at the
+     * start of a band.
+     *
+     * @param r
+     *            The source row.
+     * @param tried
+     *            A bitmask of the source rows already tried.
+     * @param empty
+     *            A bitmask of the empty source rows.
+     * @param bandStart
+     *            True if the target row is the first row of a band.
+     * @return True if the row need not be tried.
+     */
+    private static boolean isTried(final int r, final int tried, final int empty, final boolean bandStart) {
+        if ((empty & (1 << r)) == 0) return false;
+        final int band = 7 << (r / N * N);
+        if ((tried & empty & band) != 0) return true;
+        if (bandStart && (empty & band) == band) {
+            for (int b = 0; b < NN; b += N) {
+                if ((empty & (7 << b)) == 7 << b && (tried & (7 << b)) != 0) return true;
+            }
+        }
+        return false;
+    }
+
+    /***
+     * Indicates whether a column arrangement is equivalent to another one that
+     * is tried anyway, i.e., it puts two interchangeable empty columns, or two
+     * empty stacks, out of their natural order.
+     *
+     * @param columns
+     *            The source column of each target column.
+     * @param empty
+     *            A bitmask of the empty source columns.
+     * @return True if the arrangement need not be tried.
+     */
+    private static boolean isRedundant(final int[] columns, final int empty) {
+        int lastStack = -1;
+        for (int k = 0; k < NN; k += N) {
+            int last = -1;
+            for (int j = k; j < k + N; j++) {
+                final int c = columns[j];
+                if ((empty & (1 << c)) != 0) {
+                    if (c < last) return true;
+                    last = c;
+                }
+            }
+            final int stack = 7 << (columns[k] / N * N);
+            if ((empty & stack) == stack) {
+                if (columns[k] < lastStack) return true;
+                lastStack = columns[k];
+            }
+        }
+        return false;
+    }
+
+    /***
+     * Record the current transformation as the best one.
+     */
+    private void recordBest() {
+        mRecordCount++;
+        System.arraycopy(mCurrent, 0, mBest, 0, CELLS);
+        mBestTranspose = mTranspose;
+        System.arraycopy(mRows, 0, mBestRows, 0, NN);
+        System.arraycopy(mColumns, 0, mBestColumns, 0, NN);
+        System.arraycopy(mLabels[NN], 0, mBestLabels, 0, NN + 1);
+    }
+
+    /***
+     * Give labels to the digits that don't appear in the puzzle, so that
+     * {@link #mBestLabels} is a permutation, and compute its inverse.
+     */
+    private void completeLabels() {
+        int count = 0;
+        for (int d = 1; d <= NN; d++) {
+            if (mBestLabels[d] > count) count = mBestLabels[d];
+        }
+        for (int d = 1; d <= NN; d++) {
+            if (mBestLabels[d] == 0) mBestLabels[d] = ++count;
+        }
+        mBestLabels[0] = 0;
+        for (int d = 0; d <= NN; d++) {
+            mInverseLabels[mBestLabels[d]] = d;
+        }
+    }
+}
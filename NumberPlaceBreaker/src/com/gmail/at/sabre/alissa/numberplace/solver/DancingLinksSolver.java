@@ -0,0 +1,409 @@
+package com.gmail.at.sabre.alissa.numberplace.solver;
+
+/***
+ * Solve a number place puzzle as an exact cover problem, using Knuth's
+ * Algorithm X with Dancing Links.
+ * <p>
+ * A puzzle is a fixed exact cover problem of 729 options (a digit in a cell)
+ * and 324 items (a cell has a digit, a row, a column, and a block has each
+ * digit.) The links are held in int arrays, not objects, and an instance
+ * restores them from a shared pristine copy before each puzzle, so solving a
+ * puzzle allocates nothing but the returned solution.
+ * <p>
+ * Since the search visits each solution one by one, it is cheap to count or
+ * enumerate the solutions of a puzzle; see
+ * {@link #countSolutions(byte[][], int)} and
+ * {@link #enumerate(byte[][], int, Callback)}.
+ *
+ * @author alissa
+ */
+public class DancingLinksSolver implements SolverEngine {
+
+    /***
+     * The dimension of the basic block.
+     */
+    private static final int N = 3;
+
+    /***
+     * The dimension (i.e., both the height and the width) of the whole puzzle.
+     */
+    private static final int NN = N * N;
+
+    /***
+     * The number of cells in a puzzle.
+     */
+    private static final int CELLS = NN * NN;
+
+    /***
+     * The number of items (columns of the exact cover matrix.)
+     */
+    private static final int ITEMS = CELLS * 4;
+
+    /***
+     * The number of options (rows of the exact cover matrix.)
+     */
+    private static final int OPTIONS = CELLS * NN;
+
+    /***
+     * The node index of the root of the item headers. The header of the i'th
+     * item is at the node index i + 1.
+     */
+    private static final int ROOT = 0;
+
+    /***
+     * The node index of the first node of the first option. The four nodes of
+     * the option o are at FIRST + o * 4 to FIRST + o * 4 + 3.
+     */
+    private static final int FIRST = ITEMS + 1;
+
+    /***
+     * The total number of nodes.
+     */
+    private static final int NODES = FIRST + OPTIONS * 4;
+
+    /***
+     * The item (header node index) of each node. It never changes.
+     */
+    private static final int[] ITEM = new int[NODES];
+
+    // The pristine links and item sizes, copied to the instance's work area
+    // before solving each puzzle.
+    private static final int[] INIT_L = new int[NODES];
+    private static final int[] INIT_R = new int[NODES];
+    private static final int[] INIT_U = new int[NODES];
+    private static final int[] INIT_D = new int[NODES];
+    private static final int[] INIT_S = new int[ITEMS + 1];
+
+    static {
+        for (int h = ROOT; h <= ITEMS; h++) {
+            ITEM[h] = h;
+            INIT_L[h] = h == ROOT ? ITEMS : h - 1;
+            INIT_R[h] = h == ITEMS ? ROOT : h + 1;
+            INIT_U[h] = h;
+            INIT_D[h] = h;
+        }
+        for (int o = 0; o < OPTIONS; o++) {
+            final int cell = o / NN;
+            final int d = o % NN;
+            final int x = cell % NN;
+            final int y = cell / NN;
+            final int b = y / N * N + x / N;
+            final int[] items = new int[] {
+                    1 + cell,
+                    1 + CELLS + y * NN + d,
+                    1 + CELLS * 2 + x * NN + d,
+                    1 + CELLS * 3 + b * NN + d };
+            for (int k = 0; k < 4; k++) {
+                final int n = FIRST + o * 4 + k;
+                final int h = items[k];
+                ITEM[n] = h;
+                INIT_L[n] = FIRST + o * 4 + (k + 3) % 4;
+                INIT_R[n] = FIRST + o * 4 + (k + 1) % 4;
+                INIT_U[n] = INIT_U[h];
+                INIT_D[n] = h;
+                INIT_D[INIT_U[h]] = n;
+                INIT_U[h] = n;
+                INIT_S[h]++;
+            }
+        }
+    }
+
+    /***
+     * A callback to receive solutions from
+     * {@link DancingLinksSolver#enumerate(byte[][], int, Callback)}.
+     */
+    public interface Callback {
+
+        /***
+         * Receive a solution.
+         *
+         * @param solution
+         *            The solution. The array is reused for the next solution,
+         *            so copy it if it is needed after returning.
+         * @return False to stop the enumeration.
+         */
+        public boolean onSolution(byte[][] solution);
+    }
+
+    private volatile boolean mIsStopped;
+
+    // The work area.
+    private final int[] mL = new int[NODES];
+    private final int[] mR = new int[NODES];
+    private final int[] mU = new int[NODES];
+    private final int[] mD = new int[NODES];
+    private final int[] mS = new int[ITEMS + 1];
+
+    /***
+     * The givens of the puzzle being solved.
+     */
+    private final int[] mGivens = new int[CELLS];
+
+    /***
+     * The options chosen by the search so far.
+     */
+    private final int[] mChosen = new int[CELLS];
+
+    /***
+     * The first solution found by the search.
+     */
+    private final byte[][] mSolution = new byte[NN][NN];
+
+    /***
+     * The number of solutions found by the search.
+     */
+    private int mCount;
+
+    /***
+     * The number of solutions the search should find before it stops.
+     */
+    private int mLimit;
+
+    /***
+     * The callback to pass solutions to, or null.
+     */
+    private Callback mCallback;
+
+    /***
+     * The buffer to pass solutions to {@link #mCallback}.
+     */
+    private final byte[][] mBuffer = new byte[NN][NN];
+
+    // public methods
+
+    /***
+     * Solve a number place puzzle.
+     *
+     * @param puzzle
+     *            The puzzle to solve.
+     * @return A solution, or null if no solution was found.
+     */
+    public synchronized byte[][] solve(final byte[][] puzzle) {
+        if (run(puzzle, 1, null) == 0 || mIsStopped) return null;
+
+        final byte[][] solution = new byte[NN][NN];
+        for (int y = 0; y < NN; y++) {
+            System.arraycopy(mSolution[y], 0, solution[y], 0, NN);
+        }
+        return solution;
+    }
+
+    /***
+     * Count the solutions of a number place puzzle, up to a limit. It is
+     * {@link #enumerate(byte[][], int, Callback)} without a callback.
+     *
+     * @param puzzle
+     *            The puzzle.
+     * @param limit
+     *            The maximum number of solutions to count.
+     * @return The number of solutions, which is no more than limit.
+     */
+    public synchronized int countSolutions(final byte[][] puzzle, final int limit) {
+        return run(puzzle, limit, null);
+    }
+
+    /***
+     * Enumerate the solutions of a number place puzzle, up to a limit, and
+     * pass each of them to a callback as it is found.
+     *
+     * @param puzzle
+     *            The puzzle.
+     * @param limit
+     *            The maximum number of solutions to enumerate.
+     * @param callback
+     *            The callback to receive solutions.
+     * @return The number of solutions passed to the callback.
+     */
+    public synchronized int enumerate(final byte[][] puzzle, final int limit, final Callback callback) {
+        return run(puzzle, limit, callback);
+    }
+
+    /***
+     * Stop solving the puzzle. This method is intended to be invoked by a
+     * thread when another thread is executing {@link #solve(byte[][])} or
+     * {@link #enumerate(byte[][], int, Callback)}. The search soon stops, and
+     * {@link #solve(byte[][])} returns null, or
+     * {@link #countSolutions(byte[][], int)} and
+     * {@link #enumerate(byte[][], int, Callback)} return the number of
+     * solutions found so far. This method itself returns very soon.
+     */
+    public void stop() {
+        mIsStopped = true;
+    }
+
+    /***
+     * Indicates whether the recent invocation of {@link #solve(byte[][])} has
+     * stopped by {@link #stop()}.
+     *
+     * @return true if stopped.
+     */
+    public boolean isStopped() {
+        return mIsStopped;
+    }
+
+    // Search
+
+    /***
+     * Run the search for a puzzle.
+     *
+     * @param puzzle
+     *            The puzzle.
+     * @param limit
+     *            The maximum number of solutions to find.
+     * @param callback
+     *            A callback to receive solutions, or null.
+     * @return The number of solutions found.
+     */
+    private int run(final byte[][] puzzle, final int limit, final Callback callback) {
+        mIsStopped = false;
+        mCount = 0;
+        mLimit = limit;
+        mCallback = callback;
+        try {
+            if (limit > 0 && setup(puzzle)) {
+                search(0);
+            }
+        } finally {
+            mCallback = null;
+        }
+        return mCount;
+    }
+
+    /***
+     * Restore the pristine links and choose the options for the givens.
+     *
+     * @param puzzle
+     *            The puzzle instance.
+     * @return False if the givens have a trivial contradiction.
+     */
+    private boolean setup(final byte[][] puzzle) {
+        System.arraycopy(INIT_L, 0, mL, 0, NODES);
+        System.arraycopy(INIT_R, 0, mR, 0, NODES);
+        System.arraycopy(INIT_U, 0, mU, 0, NODES);
+        System.arraycopy(INIT_D, 0, mD, 0, NODES);
+        System.arraycopy(INIT_S, 0, mS, 0, ITEMS + 1);
+
+        for (int y = 0; y < NN; y++) {
+            for (int x = 0; x < NN; x++) {
+                final int d = puzzle[y][x];
+                final int cell = y * NN + x;
+                mGivens[cell] = d;
+                if (d > NN) return false; // No such digit.
+                if (d > 0) {
+                    final int r = FIRST + (cell * NN + d - 1) * 4;
+                    for (int k = 0; k < 4; k++) {
+                        final int h = ITEM[r + k];
+                        if (mR[mL[h]] != h) return false; // Already covered by another given.
+                    }
+                    for (int k = 0; k < 4; k++) {
+                        cover(ITEM[r + k]);
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /***
+     * Search for solutions recursively.
+     *
+     * @param k
+     *            The number of options chosen so far.
+     * @return True if the search should stop.
+     */
+    private boolean search(final int k) {
+        if (mIsStopped) return true;
+
+        if (mR[ROOT] == ROOT) {
+            return onSolution(k);
+        }
+
+        // Choose the item with the fewest options.
+        int c = mR[ROOT];
+        for (int h = mR[c]; h != ROOT; h = mR[h]) {
+            if (mS[h] < mS[c]) c = h;
+        }
+        if (mS[c] == 0) return false;
+
+        boolean done = false;
+        cover(c);
+        for (int r = mD[c]; r != c && !done; r = mD[r]) {
+            mChosen[k] = (r - FIRST) / 4;
+            for (int j = mR[r]; j != r; j = mR[j]) cover(ITEM[j]);
+            done = search(k + 1);
+            for (int j = mL[r]; j != r; j = mL[j]) uncover(ITEM[j]);
+        }
+        uncover(c);
+        return done;
+    }
+
+    /***
+     * Handle a solution found by the search.
+     *
+     * @param k
+     *            The number of options chosen.
+     * @return True if the search should stop.
+     */
+    private boolean onSolution(final int k) {
+        final byte[][] solution = mCount == 0 ? mSolution : mBuffer;
+        for (int cell = 0; cell < CELLS; cell++) {
+            solution[cell / NN][cell % NN] = (byte)mGivens[cell];
+        }
+        for (int i = 0; i < k; i++) {
+            final int o = mChosen[i];
+            solution[o / NN / NN][o / NN % NN] = (byte)(o % NN + 1);
+        }
+        mCount++;
+
+        final Callback callback = mCallback;
+        if (callback != null) {
+            if (solution != mBuffer) {
+                for (int y = 0; y < NN; y++) {
+                    System.arraycopy(solution[y], 0, mBuffer[y], 0, NN);
+                }
+            }
+            if (!callback.onSolution(mBuffer)) return true;
+        }
+
+        return mCount >= mLimit;
+    }
+
+    /***
+     * Remove an item from the header list and its options from the other
+     * items.
+     *
+     * @param c
+     *            The header node index of the item.
+     */
+    private void cover(final int c) {
+        final int[] L = mL, R = mR, U = mU, D = mD;
+        L[R[c]] = L[c];
+        R[L[c]] = R[c];
+        for (int i = D[c]; i != c; i = D[i]) {
+            for (int j = R[i]; j != i; j = R[j]) {
+                U[D[j]] = U[j];
+                D[U[j]] = D[j];
+                mS[ITEM[j]]--;
+            }
+        }
+    }
+
+    /***
+     * Undo {@link #cover(int)}.
+     *
+     * @param c
+     *            The header node index of the item.
+     */
+    private void uncover(final int c) {
+        final int[] L = mL, R = mR, U = mU, D = mD;
+        for (int i = U[c]; i != c; i = U[i]) {
+            for (int j = L[i]; j != i; j = L[j]) {
+                mS[ITEM[j]]++;
+                U[D[j]] = j;
+                D[U[j]] = j;
+            }
+        }
+        L[R[c]] = c;
+        R[L[c]] = c;
+    }
+}
@@ -0,0 +1,270 @@
+package com.gmail.at.sabre.alissa.numberplace.solver;
+
+import java.math.BigInteger;
+
+import org.sat4j.core.Vec;
+import org.sat4j.core.VecInt;
+import org.sat4j.pb.IPBSolver;
+import org.sat4j.pb.ObjectiveFunction;
+import org.sat4j.pb.PseudoOptDecorator;
+import org.sat4j.pb.SolverFactory;
+import org.sat4j.specs.ContradictionException;
+import org.sat4j.specs.ISolverService;
+import org.sat4j.specs.TimeoutException;
+
+/***
+ * Solve a number place puzzle whose givens are uncertain, e.g., those read by
+ * OCR, correcting the givens that are most likely misread.
+ * <p>
+ * Each given is specified by weights of the digits it may be. Finding the
+ * solution is a weighted MaxSAT problem: the rules of number place are the
+ * hard clauses, and each digit of a given is a soft unit clause with its
+ * weight. The solution is the one that maximizes the total weight of the
+ * digits it agrees with, i.e., that disagrees least with the givens.
+ * <p>
+ * The problem is solved by the pseudo boolean solver of SAT4J. A cell has
+ * exactly one digit, so minimizing the weights of the unsatisfied soft clauses
+ * is same as minimizing, for each cell, how much the weight of its digit is
+ * less than the largest one. The latter is used as the objective function,
+ * and the solver improves the solution until no better one exists.
+ * <p>
+ * Before that, the puzzle of the heaviest digits is solved by an ordinary
+ * {@link PuzzleSolver}. If it has a solution, no correction is needed, and
+ * the optimization is not involved at all.
+ *
+ * @author alissa
+ */
+public class GivenCorrector {
+
+    /***
+     * The dimension (i.e., both the height and the width) of the whole puzzle.
+     * It is 9 for a standard Number Place puzzle.
+     */
+    private final int mNN;
+
+    /***
+     * The solver for the puzzle of the heaviest digits. It also provides the
+     * rules of number place and their variable encoding.
+     */
+    private final PuzzleSolver mSolver;
+
+    /***
+     * Whether {@link #stop()} was requested and not yet consumed by
+     * {@link #solve(int[][][])}. It is cleared when solving ends rather than
+     * when it starts, so that a request that comes before is not lost.
+     */
+    private volatile boolean mIsStopped;
+
+    /***
+     * Whether the recent invocation of {@link #solve(int[][][])} has stopped.
+     */
+    private volatile boolean mWasStopped;
+
+    /***
+     * The pseudo boolean solver working, or null if none.
+     */
+    private volatile IPBSolver mPBSolver;
+
+    /***
+     * The number of givens that the recent solution disagrees with their
+     * heaviest digits.
+     */
+    private int mCorrectedCount;
+
+    /***
+     * Create a corrector for a standard nine by nine puzzle.
+     */
+    public GivenCorrector() {
+        this(3);
+    }
+
+    /***
+     * Create a corrector for a puzzle of any size.
+     *
+     * @param n
+     *            The dimension of the basic block. The whole puzzle is n * n
+     *            by n * n cells.
+     */
+    public GivenCorrector(final int n) {
+        mNN = n * n;
+        mSolver = new PuzzleSolver(n);
+    }
+
+    /***
+     * Solve a puzzle of uncertain givens. This method may block for some long
+     * time, as {@link PuzzleSolver#solve(byte[][])} does.
+     *
+     * @param weights
+     *            The givens, indexed as [y][x][d]. weights[y][x] is null for
+     *            an empty cell. Otherwise, it is an array of length 10 (or
+     *            NN+1) and weights[y][x][d] for d in 1..9 (or 1..NN) is a non
+     *            negative weight of the belief that the given is d.
+     * @return A solution, or null if no solution was found. A given may
+     *         disagree with the solution if and only if there is no solution
+     *         without correction.
+     */
+    public synchronized byte[][] solve(final int[][][] weights) {
+        mWasStopped = false;
+        try {
+            return correct(weights);
+        } finally {
+            mWasStopped = mIsStopped;
+            mIsStopped = false;
+        }
+    }
+
+    /***
+     * Solve a puzzle of uncertain givens, unless {@link #stop()} has been
+     * requested.
+     */
+    private byte[][] correct(final int[][][] weights) {
+
+        mCorrectedCount = 0;
+        if (mIsStopped) return null;
+
+        final byte[][] puzzle = new byte[mNN][mNN];
+        for (int y = 0; y < mNN; y++) {
+            for (int x = 0; x < mNN; x++) {
+                final int[] w = weights[y][x];
+                if (w != null) puzzle[y][x] = (byte)heaviest(w);
+            }
+        }
+
+        // mSolver ignores a stop requested before it starts, so the request
+        // is checked again after it.
+        final byte[][] solution = mSolver.solve(puzzle);
+        if (mIsStopped) return null;
+        if (solution != null || mSolver.isStopped()) return solution;
+
+        try {
+
+            final IPBSolver pb = SolverFactory.newDefault();
+            mPBSolver = pb;
+            if (mIsStopped) return null;
+            final int[] model = optimize(pb, weights);
+            if (model == null || mIsStopped) return null;
+
+            final byte[][] corrected = new byte[mNN][mNN];
+            for (int i = 0; i < model.length; i++) {
+                final int id = model[i];
+                if (id > 0 && id <= mNN * mNN * mNN) {
+                    corrected[mSolver.varY(id)][mSolver.varX(id)] = (byte)mSolver.varD(id);
+                }
+            }
+            for (int y = 0; y < mNN; y++) {
+                for (int x = 0; x < mNN; x++) {
+                    if (puzzle[y][x] > 0 && puzzle[y][x] != corrected[y][x]) mCorrectedCount++;
+                }
+            }
+            return corrected;
+
+        } catch (ContradictionException e) {
+            return null;
+        } finally {
+            mPBSolver = null;
+        }
+    }
+
+    /***
+     * Stop solving the puzzle. This method is intended to be invoked by a
+     * thread when another thread is executing {@link #solve(int[][][])}. The
+     * execution in the other thread soon stops and returns null. If no
+     * execution is in progress, the next one returns null at once. This method
+     * itself returns very soon.
+     */
+    public void stop() {
+        mIsStopped = true;
+        mSolver.stop();
+        final IPBSolver pb = mPBSolver;
+        if (pb != null) {
+            ((ISolverService)pb).stop();
+        }
+    }
+
+    /***
+     * Indicates whether the recent invocation of {@link #solve(int[][][])}
+     * has stopped by {@link #stop()}.
+     *
+     * @return true if stopped.
+     */
+    public boolean isStopped() {
+        return mIsStopped || mWasStopped;
+    }
+
+    /***
+     * Return the number of givens corrected by the recent invocation of
+     * {@link #solve(int[][][])}, i.e., the givens whose heaviest digits
+     * disagree with the solution.
+     *
+     * @return The number of givens corrected.
+     */
+    public int getCorrectedCount() {
+        return mCorrectedCount;
+    }
+
+    /***
+     * Find the digit of the largest weight. The smallest digit is taken if
+     * two or more digits have the same weight.
+     *
+     * @param w
+     *            The weights of digits indexed by the digit.
+     * @return The heaviest digit.
+     */
+    private int heaviest(final int[] w) {
+        int d = 1;
+        for (int e = 2; e <= mNN; e++) {
+            if (w[e] > w[d]) d = e;
+        }
+        return d;
+    }
+
+    /***
+     * Load the rules of number place and the objective function into a pseudo
+     * boolean solver, and find an optimum model.
+     *
+     * @param pb
+     *            The pseudo boolean solver.
+     * @param weights
+     *            The givens as in {@link #solve(int[][][])}.
+     * @return The optimum model, or null if no model was found.
+     * @throws ContradictionException
+     *             Never thrown unless the puzzle rules have a serious bug.
+     */
+    private int[] optimize(final IPBSolver pb, final int[][][] weights) throws ContradictionException {
+
+        mSolver.getPuzzleRules().addTo(pb);
+
+        // Taking the digit d in the cell at (x,y) costs how much its weight
+        // is less than the heaviest one of the cell.
+        final VecInt vars = new VecInt();
+        final Vec<BigInteger> coeffs = new Vec<BigInteger>();
+        for (int y = 0; y < mNN; y++) {
+            for (int x = 0; x < mNN; x++) {
+                final int[] w = weights[y][x];
+                if (w == null) continue;
+                final int max = w[heaviest(w)];
+                for (int d = 1; d <= mNN; d++) {
+                    if (w[d] < max) {
+                        vars.push(mSolver.var(x, y, d));
+                        coeffs.push(BigInteger.valueOf(max - w[d]));
+                    }
+                }
+            }
+        }
+        pb.setObjectiveFunction(new ObjectiveFunction(vars, coeffs));
+
+        final PseudoOptDecorator optimizer = new PseudoOptDecorator(pb);
+        int[] best = null;
+        try {
+            while (optimizer.admitABetterSolution()) {
+                best = optimizer.model();
+                optimizer.discardCurrentSolution();
+            }
+        } catch (ContradictionException e) {
+            // No better solution exists.
+        } catch (TimeoutException e) {
+            // Stopped.
+        }
+        return best;
+    }
+}
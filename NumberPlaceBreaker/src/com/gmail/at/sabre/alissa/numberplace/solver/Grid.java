@@ -0,0 +1,324 @@
+package com.gmail.at.sabre.alissa.numberplace.solver;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/***
+ * An immutable number place grid, i.e., a puzzle or a solution.
+ * <p>
+ * The digits are kept in a flat array of bytes in the row major order, where
+ * the cell at x'th column of y'th row is at index y * size + x. A digit is in
+ * range 1..9 (or 1..size), and 0 represents an empty cell. The hash code is
+ * computed once when a grid is created, so comparing two grids of different
+ * digits usually costs no more than comparing their hash codes.
+ * <p>
+ * The binary form of a grid, by {@link #toByteArray()} or
+ * {@link #writeTo(ByteBuffer)}, is a byte of the size followed by the digits
+ * in the same order, i.e., 82 bytes for a nine by nine grid. It is used to
+ * pass a puzzle in an intent extra as a plain byte array.
+ * <p>
+ * A grid never exposes its array. {@link #asByteBuffer()} gives a read only
+ * view of it without copying.
+ *
+ * @author alissa
+ */
+public final class Grid {
+
+    /***
+     * The empty nine by nine grid.
+     */
+    public static final Grid EMPTY = new Grid(9, new byte[81]);
+
+    /***
+     * The size, i.e., both the height and the width, of the grid. It is 9
+     * for a standard Number Place puzzle.
+     */
+    private final int mSize;
+
+    /***
+     * The digits in the row major order. It is never modified after the
+     * construction.
+     */
+    private final byte[] mCells;
+
+    private final int mHash;
+
+    /***
+     * Create a grid on an array, without copying. The array must not be
+     * modified after this.
+     */
+    private Grid(final int size, final byte[] cells) {
+        mSize = size;
+        mCells = cells;
+        mHash = size * 31 + Arrays.hashCode(cells);
+    }
+
+    // Factories
+
+    /***
+     * Create a grid from a square array of digits.
+     *
+     * @param digits
+     *            The digits indexed as [y][x].
+     * @return The grid.
+     * @throws IllegalArgumentException
+     *             If the array is not square or a digit is out of range.
+     */
+    public static Grid of(final byte[][] digits) {
+        final int size = digits.length;
+        final byte[] cells = new byte[size * size];
+        for (int y = 0; y < size; y++) {
+            if (digits[y].length != size) {
+                throw new IllegalArgumentException(String.format("digits[%d].length must be %d but %d", y, size, digits[y].length));
+            }
+            System.arraycopy(digits[y], 0, cells, y * size, size);
+        }
+        return new Grid(size, check(size, cells));
+    }
+
+    /***
+     * Create a grid from a part of an array of digits in the row major order.
+     *
+     * @param size
+     *            The size of the grid.
+     * @param cells
+     *            The array of digits. It is copied.
+     * @param offset
+     *            The index of the digit of the cell at (0,0) in the array.
+     * @return The grid.
+     * @throws IllegalArgumentException
+     *             If the array is too short or a digit is out of range.
+     */
+    public static Grid of(final int size, final byte[] cells, final int offset) {
+        if (offset < 0 || offset + size * size > cells.length) {
+            throw new IllegalArgumentException(String.format("cells must have %d digits at %d but %d bytes", size * size, offset, cells.length));
+        }
+        return new Grid(size, check(size, Arrays.copyOfRange(cells, offset, offset + size * size)));
+    }
+
+    /***
+     * Create a grid from an array of digits in the row major order.
+     *
+     * @param size
+     *            The size of the grid.
+     * @param cells
+     *            The array of digits, whose length is size * size. It is
+     *            copied.
+     * @return The grid.
+     * @throws IllegalArgumentException
+     *             If the length is wrong or a digit is out of range.
+     */
+    public static Grid of(final int size, final byte[] cells) {
+        if (cells.length != size * size) {
+            throw new IllegalArgumentException(String.format("cells.length must be %d but %d", size * size, cells.length));
+        }
+        return of(size, cells, 0);
+    }
+
+    /***
+     * Decode a grid from its binary form.
+     *
+     * @param data
+     *            The binary form, as {@link #toByteArray()} returns.
+     * @return The grid.
+     * @throws IllegalArgumentException
+     *             If the data is malformed.
+     */
+    public static Grid fromByteArray(final byte[] data) {
+        if (data.length < 1 || data.length != 1 + data[0] * data[0]) {
+            throw new IllegalArgumentException(String.format("Malformed grid data of %d bytes", data.length));
+        }
+        return of(data[0], data, 1);
+    }
+
+    /***
+     * Read a grid in its binary form from the current position of a buffer.
+     * The position is advanced past the grid, or left unchanged if the data
+     * is malformed.
+     *
+     * @param buffer
+     *            The buffer.
+     * @return The grid.
+     * @throws IllegalArgumentException
+     *             If the data is malformed, e.g., the size is not positive or
+     *             the buffer has fewer digits than the size tells.
+     */
+    public static Grid readFrom(final ByteBuffer buffer) {
+        final int position = buffer.position();
+        if (!buffer.hasRemaining()) throw new IllegalArgumentException("Malformed grid data of 0 bytes");
+        final int size = buffer.get(position);
+        if (size < 1) throw new IllegalArgumentException(String.format("size must be positive but %d", size));
+        if (buffer.remaining() < 1 + size * size) {
+            throw new IllegalArgumentException(String.format("Malformed grid data of %d bytes for size %d", buffer.remaining(), size));
+        }
+        final byte[] cells = new byte[size * size];
+        buffer.position(position + 1);
+        buffer.get(cells);
+        try {
+            return new Grid(size, check(size, cells));
+        } catch (IllegalArgumentException e) {
+            buffer.position(position);
+            throw e;
+        }
+    }
+
+    // Accessors
+
+    /***
+     * Return the size of this grid.
+     *
+     * @return The size, i.e., both the height and the width, of the grid.
+     */
+    public int getSize() {
+        return mSize;
+    }
+
+    /***
+     * Return the digit in a cell.
+     *
+     * @param x
+     *            The column of the cell.
+     * @param y
+     *            The row of the cell.
+     * @return The digit, or 0 if the cell is empty.
+     */
+    public int get(final int x, final int y) {
+        return mCells[y * mSize + x];
+    }
+
+    /***
+     * Return the digit in a cell.
+     *
+     * @param i
+     *            The index of the cell, i.e., y * size + x for the cell at
+     *            (x,y).
+     * @return The digit, or 0 if the cell is empty.
+     */
+    public int get(final int i) {
+        return mCells[i];
+    }
+
+    /***
+     * Return a grid that differs from this one only in a cell. This grid is
+     * not changed.
+     *
+     * @param x
+     *            The column of the cell.
+     * @param y
+     *            The row of the cell.
+     * @param digit
+     *            The new digit, or 0 to clear the cell.
+     * @return The new grid, or this one if the digit is same.
+     */
+    public Grid with(final int x, final int y, final int digit) {
+        if (digit < 0 || digit > mSize) throw new IllegalArgumentException(String.format("digit must be in range 0..%d but %d", mSize, digit));
+        final int i = y * mSize + x;
+        if (mCells[i] == digit) return this;
+        final byte[] cells = mCells.clone();
+        cells[i] = (byte)digit;
+        return new Grid(mSize, cells);
+    }
+
+    /***
+     * Return the number of filled cells.
+     *
+     * @return The number of cells that have digits.
+     */
+    public int getFilledCount() {
+        int n = 0;
+        for (byte d : mCells) {
+            if (d > 0) n++;
+        }
+        return n;
+    }
+
+    /***
+     * Return a read only view of the digits in the row major order. The view
+     * shares the storage with this grid.
+     *
+     * @return The view.
+     */
+    public ByteBuffer asByteBuffer() {
+        return ByteBuffer.wrap(mCells).asReadOnlyBuffer();
+    }
+
+    /***
+     * Return the digits in a newly allocated array, e.g., to pass to a solver
+     * engine.
+     *
+     * @return The digits indexed as [y][x].
+     */
+    public byte[][] toArray() {
+        final byte[][] digits = new byte[mSize][mSize];
+        for (int y = 0; y < mSize; y++) {
+            System.arraycopy(mCells, y * mSize, digits[y], 0, mSize);
+        }
+        return digits;
+    }
+
+    // Binary form
+
+    /***
+     * Return this grid in the binary form, i.e., the size in a byte followed
+     * by the cells row by row, that {@link #fromByteArray(byte[])} reads.
+     *
+     * @return The binary form of this grid.
+     */
+    public byte[] toByteArray() {
+        final byte[] data = new byte[1 + mCells.length];
+        data[0] = (byte)mSize;
+        System.arraycopy(mCells, 0, data, 1, mCells.length);
+        return data;
+    }
+
+    /***
+     * Write the binary form of this grid at the current position of a buffer.
+     * The position is advanced past the grid.
+     *
+     * @param buffer
+     *            The buffer.
+     */
+    public void writeTo(final ByteBuffer buffer) {
+        buffer.put((byte)mSize);
+        buffer.put(mCells);
+    }
+
+    // Object
+
+    @Override
+    public boolean equals(final Object o) {
+        if (o == this) return true;
+        if (!(o instanceof Grid)) return false;
+        final Grid g = (Grid)o;
+        return mHash == g.mHash && mSize == g.mSize && Arrays.equals(mCells, g.mCells);
+    }
+
+    @Override
+    public int hashCode() {
+        return mHash;
+    }
+
+    /***
+     * Return the digits in one line, with '.' for empty cells, e.g., for
+     * logging. A digit larger than 9 is a letter, A for 10.
+     */
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder(mCells.length);
+        for (byte d : mCells) {
+            sb.append(d == 0 ? '.' : Character.toUpperCase(Character.forDigit(d, 36)));
+        }
+        return sb.toString();
+    }
+
+    // Utilities
+
+    private static byte[] check(final int size, final byte[] cells) {
+        for (int i = 0; i < cells.length; i++) {
+            if (cells[i] < 0 || cells[i] > size) {
+                throw new IllegalArgumentException(String.format("digit must be in range 0..%d but %d at (%d,%d)", size, cells[i], i % size, i / size));
+            }
+        }
+        return cells;
+    }
+}
@@ -0,0 +1,326 @@
+package com.gmail.at.sabre.alissa.numberplace.solver;
+
+/***
+ * Track the rule violations of a standard nine by nine puzzle under editing,
+ * i.e., digits that appear twice or more in a row, a column, or a block.
+ * <p>
+ * It keeps the number of cells of each digit in each unit, so changing a
+ * cell costs a constant time, and whether the puzzle or a cell has a conflict
+ * is known at once. A puzzle with a conflict has obviously no solution, so
+ * there is no need to search for one.
+ * <p>
+ * The digits used in each unit are kept as bitmasks, too, so the candidates
+ * of a cell, i.e., the digits that can be put into it without a conflict, are
+ * also known at once, e.g., to show them as pencil marks.
+ * <p>
+ * It also has static methods to verify a whole grid without allocating any
+ * memory, and the unit tables of the standard puzzle, that
+ * {@link HintService} and {@link DifficultyRater} share.
+ * <p>
+ * An instance is not thread safe; it is intended to be used by one thread,
+ * e.g., the UI thread, or under the lock of its owner, e.g.,
+ * {@link HintService}.
+ *
+ * @author alissa
+ */
+public class GridValidator {
+
+    /***
+     * The dimension of the basic block.
+     */
+    private static final int N = 3;
+
+    /***
+     * The dimension (i.e., both the height and the width) of the whole puzzle.
+     */
+    private static final int NN = N * N;
+
+    /***
+     * The number of cells in a puzzle.
+     */
+    private static final int CELLS = NN * NN;
+
+    /***
+     * A bitmask to represent all digits.
+     */
+    private static final int ALL = (1 << NN) - 1;
+
+    /***
+     * The cells in each unit. UNITS[u] lists the cell indexes of the unit u,
+     * where u in 0..8 is a row, in 9..17 is a column, and in 18..26 is a
+     * block. A cell index is y * 9 + x for the cell at (x,y).
+     */
+    static final int[][] UNITS = new int[NN * 3][NN];
+
+    /***
+     * The units of each cell, i.e., its row, column, and block in this order.
+     */
+    static final int[][] UNITS_OF = new int[CELLS][3];
+
+    static {
+        for (int i = 0; i < CELLS; i++) {
+            final int x = i % NN;
+            final int y = i / NN;
+            final int b = y / N * N + x / N;
+            UNITS[y][x] = i;
+            UNITS[NN + x][y] = i;
+            UNITS[NN * 2 + b][y % N * N + x % N] = i;
+            UNITS_OF[i][0] = y;
+            UNITS_OF[i][1] = NN + x;
+            UNITS_OF[i][2] = NN * 2 + b;
+        }
+    }
+
+    /***
+     * The digit in each cell, or 0 if the cell is empty.
+     */
+    private final int[] mCells = new int[CELLS];
+
+    /***
+     * The number of cells of each digit in each unit, at u * 9 + d - 1 for
+     * the unit u and the digit d.
+     */
+    private final int[] mCounts = new int[NN * 3 * NN];
+
+    /***
+     * The digits used in each unit, where the bit (d - 1) stands for the
+     * digit d.
+     */
+    private final int[] mUsed = new int[NN * 3];
+
+    /***
+     * The sum of the excess over one of all numbers in {@link #mCounts}. It is
+     * 0 if and only if there is no conflict.
+     */
+    private int mExcess;
+
+    /***
+     * The number of filled cells.
+     */
+    private int mFilled;
+
+    /***
+     * Create a validator for an empty puzzle.
+     */
+    public GridValidator() {
+    }
+
+    // public methods
+
+    /***
+     * Load a whole puzzle.
+     *
+     * @param puzzle
+     *            The nine by nine puzzle, or null for an empty one.
+     */
+    public void load(final Grid puzzle) {
+        if (puzzle != null && puzzle.getSize() != NN) throw new IllegalArgumentException(String.format("puzzle's size must be 9 but %d", puzzle.getSize()));
+        for (int k = 0; k < mCounts.length; k++) mCounts[k] = 0;
+        for (int u = 0; u < mUsed.length; u++) mUsed[u] = 0;
+        mExcess = 0;
+        mFilled = 0;
+        for (int i = 0; i < CELLS; i++) {
+            mCells[i] = 0;
+            if (puzzle != null) put(i, puzzle.get(i));
+        }
+    }
+
+    /***
+     * Change a cell.
+     *
+     * @param x
+     *            The column of the cell, in range 0..8.
+     * @param y
+     *            The row of the cell, in range 0..8.
+     * @param digit
+     *            The new digit in range 1..9, or 0 to clear the cell.
+     */
+    public void setCell(final int x, final int y, final int digit) {
+        if (digit < 0 || digit > NN) throw new IllegalArgumentException(String.format("digit must be in range 0..9 but %d", digit));
+        final int i = y * NN + x;
+        final int old = mCells[i];
+        if (old == digit) return;
+        if (old > 0) {
+            for (int u : UNITS_OF[i]) {
+                final int count = --mCounts[u * NN + old - 1];
+                if (count > 0) {
+                    mExcess--;
+                } else {
+                    mUsed[u] &= ~(1 << (old - 1));
+                }
+            }
+            mFilled--;
+        }
+        mCells[i] = 0;
+        put(i, digit);
+    }
+
+    /***
+     * Return the digit of a cell.
+     *
+     * @param x
+     *            The column of the cell, in range 0..8.
+     * @param y
+     *            The row of the cell, in range 0..8.
+     * @return The digit in range 1..9, or 0 if the cell is empty.
+     */
+    public int get(final int x, final int y) {
+        return mCells[y * NN + x];
+    }
+
+    /***
+     * Return the digit of a cell.
+     *
+     * @param i
+     *            The index of the cell, i.e., y * 9 + x for the cell at (x,y).
+     * @return The digit in range 1..9, or 0 if the cell is empty.
+     */
+    public int get(final int i) {
+        return mCells[i];
+    }
+
+    /***
+     * Indicates whether any digit appears twice or more in a unit.
+     *
+     * @return True if the puzzle has a conflict.
+     */
+    public boolean hasConflicts() {
+        return mExcess > 0;
+    }
+
+    /***
+     * Indicates whether the digit of a cell appears in another cell of its
+     * row, column, or block.
+     *
+     * @param x
+     *            The column of the cell, in range 0..8.
+     * @param y
+     *            The row of the cell, in range 0..8.
+     * @return True if the cell has a conflicting digit. False if not, or the
+     *         cell is empty.
+     */
+    public boolean isConflicting(final int x, final int y) {
+        final int i = y * NN + x;
+        final int d = mCells[i];
+        if (d == 0 || mExcess == 0) return false;
+        final int[] units = UNITS_OF[i];
+        return mCounts[units[0] * NN + d - 1] > 1
+            || mCounts[units[1] * NN + d - 1] > 1
+            || mCounts[units[2] * NN + d - 1] > 1;
+    }
+
+    /***
+     * Return the cells that have conflicting digits.
+     *
+     * @return A 9x9 mask indexed as [y][x], or null if there is no conflict.
+     */
+    public boolean[][] getConflicts() {
+        if (mExcess == 0) return null;
+        final boolean[][] conflicts = new boolean[NN][NN];
+        for (int y = 0; y < NN; y++) {
+            for (int x = 0; x < NN; x++) {
+                conflicts[y][x] = isConflicting(x, y);
+            }
+        }
+        return conflicts;
+    }
+
+    /***
+     * Return the candidates of a cell, i.e., the digits not used in its row,
+     * column, or block.
+     *
+     * @param x
+     *            The column of the cell, in range 0..8.
+     * @param y
+     *            The row of the cell, in range 0..8.
+     * @return The bitmask of the candidates, where the bit (d - 1) stands for
+     *         the digit d, or 0 if the cell is filled.
+     */
+    public int getCandidates(final int x, final int y) {
+        return getCandidates(y * NN + x);
+    }
+
+    /***
+     * Return the candidates of a cell, i.e., the digits not used in its row,
+     * column, or block.
+     *
+     * @param i
+     *            The index of the cell, i.e., y * 9 + x for the cell at (x,y).
+     * @return The bitmask of the candidates, where the bit (d - 1) stands for
+     *         the digit d, or 0 if the cell is filled.
+     */
+    public int getCandidates(final int i) {
+        if (mCells[i] > 0) return 0;
+        final int[] units = UNITS_OF[i];
+        return ALL & ~(mUsed[units[0]] | mUsed[units[1]] | mUsed[units[2]]);
+    }
+
+    /***
+     * Indicates whether all cells are filled with no conflict.
+     *
+     * @return True if the puzzle is solved.
+     */
+    public boolean isSolved() {
+        return mFilled == CELLS && mExcess == 0;
+    }
+
+    /***
+     * Verify that no digit appears twice or more in a unit of a grid. It
+     * allocates no memory.
+     *
+     * @param grid
+     *            The nine by nine grid.
+     * @return True if the grid has no conflict. Empty cells are allowed.
+     */
+    public static boolean isValid(final Grid grid) {
+        if (grid.getSize() != NN) throw new IllegalArgumentException(String.format("grid's size must be 9 but %d", grid.getSize()));
+        for (int u = 0; u < NN * 3; u++) {
+            int seen = 0;
+            for (int i : UNITS[u]) {
+                final int d = grid.get(i);
+                if (d == 0) continue;
+                final int bit = 1 << (d - 1);
+                if ((seen & bit) != 0) return false;
+                seen |= bit;
+            }
+        }
+        return true;
+    }
+
+    /***
+     * Verify that a grid is a solution of a puzzle, i.e., it is full, has no
+     * conflict, and agrees with the puzzle's digits. It allocates no memory.
+     *
+     * @param puzzle
+     *            The nine by nine puzzle.
+     * @param solution
+     *            The nine by nine grid to verify.
+     * @return True if the grid is a solution of the puzzle.
+     */
+    public static boolean isSolution(final Grid puzzle, final Grid solution) {
+        if (puzzle.getSize() != NN) throw new IllegalArgumentException(String.format("puzzle's size must be 9 but %d", puzzle.getSize()));
+        if (solution.getSize() != NN) return false;
+        for (int i = 0; i < CELLS; i++) {
+            final int d = solution.get(i);
+            if (d == 0) return false;
+            final int p = puzzle.get(i);
+            if (p > 0 && p != d) return false;
+        }
+        return isValid(solution);
+    }
+
+    // private methods
+
+    /***
+     * Put a digit into an empty cell.
+     */
+    private void put(final int i, final int digit) {
+        if (digit == 0) return;
+        for (int u : UNITS_OF[i]) {
+            if (mCounts[u * NN + digit - 1]++ > 0) mExcess++;
+            mUsed[u] |= 1 << (digit - 1);
+        }
+        mCells[i] = digit;
+        mFilled++;
+    }
+}
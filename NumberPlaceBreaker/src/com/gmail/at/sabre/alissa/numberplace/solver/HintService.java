@@ -0,0 +1,291 @@
+package com.gmail.at.sabre.alissa.numberplace.solver;
+
+import com.gmail.at.sabre.alissa.numberplace.solver.DifficultyRater.Technique;
+
+/***
+ * Give hints for a standard nine by nine puzzle under editing, one at a time.
+ * <p>
+ * It keeps the digits of the puzzle in a {@link GridValidator}, the
+ * candidates of each cell, and a solution (the model). When a cell is edited,
+ * the candidates of the cells
+ * that share a unit with it are updated, and the hidden singles are recomputed
+ * only for the units whose candidates changed, upon the next hint. The model is
+ * kept as long as it agrees with the digits, i.e., when a digit is cleared or
+ * a digit of the model is put, so a hint usually costs no search. Otherwise,
+ * it is found again by {@link BitboardSolver} upon the next request.
+ * <p>
+ * A hint is a logical deduction (a hidden single or a naked single) if there
+ * is any. If not, it is the digit of the model in an empty cell of the fewest
+ * candidates.
+ *
+ * @author alissa
+ */
+public class HintService {
+
+    /***
+     * A hint, i.e., a digit to put into a cell.
+     */
+    public static class Hint {
+
+        private final int mX;
+
+        private final int mY;
+
+        private final int mDigit;
+
+        private final Technique mTechnique;
+
+        Hint(final int x, final int y, final int digit, final Technique technique) {
+            mX = x;
+            mY = y;
+            mDigit = digit;
+            mTechnique = technique;
+        }
+
+        /***
+         * Return the column of the cell to fill.
+         *
+         * @return The column of the cell, in range 0..8.
+         */
+        public int getX() {
+            return mX;
+        }
+
+        /***
+         * Return the row of the cell to fill.
+         *
+         * @return The row of the cell, in range 0..8.
+         */
+        public int getY() {
+            return mY;
+        }
+
+        /***
+         * Return the digit to put into the cell.
+         *
+         * @return The digit to put, in range 1..9.
+         */
+        public int getDigit() {
+            return mDigit;
+        }
+
+        /***
+         * Return the technique that deduces the digit.
+         *
+         * @return {@link Technique#HIDDEN_SINGLE} or
+         *         {@link Technique#NAKED_SINGLE}, or null if the digit is taken
+         *         from the solution.
+         */
+        public Technique getTechnique() {
+            return mTechnique;
+        }
+    }
+
+    /***
+     * The dimension (i.e., both the height and the width) of the whole puzzle.
+     */
+    private static final int NN = 9;
+
+    /***
+     * The number of cells in a puzzle.
+     */
+    private static final int CELLS = NN * NN;
+
+    /***
+     * The cells in each unit. See {@link GridValidator#UNITS}.
+     */
+    private static final int[][] UNITS = GridValidator.UNITS;
+
+    /***
+     * The units of each cell. See {@link GridValidator#UNITS_OF}.
+     */
+    private static final int[][] UNITS_OF = GridValidator.UNITS_OF;
+
+    /***
+     * The digits of the puzzle, and the digits used in each unit.
+     */
+    private final GridValidator mGrid = new GridValidator();
+
+    /***
+     * The candidates of each cell, or 0 if the cell is filled, as of the last
+     * change. It is compared with {@link #mGrid} to find the units whose
+     * candidates have changed.
+     */
+    private final int[] mCandidates = new int[CELLS];
+
+    /***
+     * The hidden single of each unit, encoded as cell * 9 + digit - 1, or -1
+     * if none. It is valid only for the units not in {@link #mDirtyUnits}.
+     */
+    private final int[] mHiddenSingles = new int[NN * 3];
+
+    /***
+     * The units whose candidates have changed since their hidden singles were
+     * found, as a bitmask over the unit indexes.
+     */
+    private int mDirtyUnits;
+
+    /***
+     * The solution that agrees with the digits, if {@link #mSolvable}.
+     */
+    private final int[] mModel = new int[CELLS];
+
+    /***
+     * Whether {@link #mModel} and {@link #mSolvable} reflect the digits.
+     */
+    private boolean mModelValid;
+
+    private boolean mSolvable;
+
+    private final BitboardSolver mSolver = new BitboardSolver();
+
+    /***
+     * Create a hint service for an empty puzzle.
+     */
+    public HintService() {
+        load(null);
+    }
+
+    // public methods
+
+    /***
+     * Load a whole puzzle, discarding the model.
+     *
+     * @param puzzle
+     *            The nine by nine puzzle, or null for an empty one.
+     */
+    public synchronized void load(final Grid puzzle) {
+        mGrid.load(puzzle);
+        for (int i = 0; i < CELLS; i++) mCandidates[i] = mGrid.getCandidates(i);
+        mDirtyUnits = (1 << (NN * 3)) - 1;
+        mModelValid = false;
+    }
+
+    /***
+     * Change a cell.
+     *
+     * @param x
+     *            The column of the cell, in range 0..8.
+     * @param y
+     *            The row of the cell, in range 0..8.
+     * @param digit
+     *            The new digit in range 1..9, or 0 to clear the cell.
+     */
+    public synchronized void setCell(final int x, final int y, final int digit) {
+        final int i = y * NN + x;
+        if (mGrid.get(i) == digit) return;
+        mGrid.setCell(x, y, digit);
+
+        for (int u : UNITS_OF[i]) {
+            for (int c : UNITS[u]) {
+                final int candidates = mGrid.getCandidates(c);
+                if (candidates != mCandidates[c]) {
+                    mCandidates[c] = candidates;
+                    for (int v : UNITS_OF[c]) mDirtyUnits |= 1 << v;
+                }
+            }
+        }
+
+        // Clearing a cell or putting the digit of the model keeps the model a
+        // solution. An unsolvable puzzle may become solvable by any change.
+        if (!mSolvable || (digit > 0 && mModel[i] != digit)) mModelValid = false;
+    }
+
+    /***
+     * Indicates whether the puzzle has a solution.
+     *
+     * @return True if solvable.
+     */
+    public synchronized boolean isSolvable() {
+        updateModel();
+        return mSolvable;
+    }
+
+    /***
+     * Return the digit of a cell in the solution. If the puzzle has two or
+     * more solutions, it is the one in the model.
+     *
+     * @param x
+     *            The column of the cell, in range 0..8.
+     * @param y
+     *            The row of the cell, in range 0..8.
+     * @return The digit, or 0 if the puzzle has no solution.
+     */
+    public synchronized int getValue(final int x, final int y) {
+        updateModel();
+        return mSolvable ? mModel[y * NN + x] : 0;
+    }
+
+    /***
+     * Give the next hint.
+     *
+     * @return The hint, or null if the puzzle is full or has no solution.
+     */
+    public synchronized Hint nextHint() {
+        updateModel();
+        if (!mSolvable) return null;
+
+        for (int u = 0; u < NN * 3; u++) {
+            if ((mDirtyUnits & (1 << u)) != 0) {
+                mHiddenSingles[u] = findHiddenSingle(u);
+                mDirtyUnits &= ~(1 << u);
+            }
+            final int h = mHiddenSingles[u];
+            if (h >= 0) return newHint(h / NN, h % NN + 1, Technique.HIDDEN_SINGLE);
+        }
+
+        int best = -1;
+        for (int i = 0; i < CELLS; i++) {
+            final int c = mCandidates[i];
+            if (c == 0) continue;
+            if ((c & (c - 1)) == 0) return newHint(i, Integer.numberOfTrailingZeros(c) + 1, Technique.NAKED_SINGLE);
+            if (best < 0 || Integer.bitCount(c) < Integer.bitCount(mCandidates[best])) best = i;
+        }
+        if (best < 0) return null;
+        return newHint(best, mModel[best], null);
+    }
+
+    // private methods
+
+    /***
+     * Find a digit that has only one place in a unit.
+     *
+     * @return The hidden single encoded as cell * 9 + digit - 1, or -1 if
+     *         none.
+     */
+    private int findHiddenSingle(final int u) {
+        int once = 0;
+        int twice = 0;
+        for (int i : UNITS[u]) {
+            twice |= once & mCandidates[i];
+            once |= mCandidates[i];
+        }
+        final int hidden = once & ~twice;
+        if (hidden == 0) return -1;
+        final int bit = Integer.lowestOneBit(hidden);
+        for (int i : UNITS[u]) {
+            if ((mCandidates[i] & bit) != 0) return i * NN + Integer.numberOfTrailingZeros(bit);
+        }
+        return -1;
+    }
+
+    /***
+     * Find a solution that agrees with the digits, unless the model is still
+     * valid.
+     */
+    private void updateModel() {
+        if (mModelValid) return;
+        final byte[][] puzzle = new byte[NN][NN];
+        for (int i = 0; i < CELLS; i++) puzzle[i / NN][i % NN] = (byte)mGrid.get(i);
+        final byte[][] solution = mSolver.solve(puzzle);
+        mSolvable = solution != null;
+        if (mSolvable) {
+            for (int i = 0; i < CELLS; i++) mModel[i] = solution[i / NN][i % NN];
+        }
+        mModelValid = true;
+    }
+
+    private static Hint newHint(final int i, final int digit, final Technique technique) {
+        return new Hint(i % NN, i / NN, digit, technique);
+    }
+}
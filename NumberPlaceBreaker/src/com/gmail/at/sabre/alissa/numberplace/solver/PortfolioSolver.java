@@ -0,0 +1,255 @@
+package com.gmail.at.sabre.alissa.numberplace.solver;
+
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/***
+ * Solve a number place puzzle by running several solver engines in parallel
+ * and taking the first answer.
+ * <p>
+ * The time a SAT solver takes on a hard puzzle depends a lot on its
+ * heuristics, and an unlucky configuration may take seconds on a puzzle that
+ * another one solves in milliseconds. This class runs all of its members, e.g.,
+ * {@link PuzzleSolver}s of different configurations (see
+ * {@link PuzzleSolver#setConfiguration(String)}) or different engines, on a
+ * same puzzle at once, returns the answer of the one that finishes first, and
+ * stops the others. The latency is thus that of the fastest member on each
+ * puzzle, at the cost of using as many processors as the members.
+ * <p>
+ * Each member runs on its own worker thread, that this class keeps for its
+ * lifetime. Invoke {@link #shutdown()} when the instance is no longer needed.
+ *
+ * @author alissa
+ */
+public class PortfolioSolver implements SolverEngine {
+
+    /***
+     * A piece of work to run on each member.
+     */
+    private interface Job<T> {
+        public T run(SolverEngine engine);
+    }
+
+    /***
+     * The interval to repeat stopping a member, in milliseconds, until the
+     * member really stops. A member that has not yet started solving when it is
+     * asked to stop ignores the request, so the request is repeated. It is
+     * also the interval to check whether this solver is stopped while the
+     * members are running.
+     */
+    private static final long STOP_INTERVAL = 10;
+
+    private final SolverEngine[] mMembers;
+
+    private final ExecutorService mExecutor;
+
+    private volatile boolean mIsStopped;
+
+    /***
+     * The index of the member that gave the recent answer, or -1.
+     */
+    private int mWinner = -1;
+
+    /***
+     * Create a portfolio solver.
+     *
+     * @param members
+     *            The solver engines to run in parallel. They must be distinct
+     *            instances, and they should not be used by others while this
+     *            solver is in use.
+     */
+    public PortfolioSolver(final SolverEngine... members) {
+        if (members.length == 0) throw new IllegalArgumentException("No members");
+        mMembers = members.clone();
+        mExecutor = Executors.newFixedThreadPool(members.length, new ThreadFactory() {
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, "PortfolioSolver");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /***
+     * Create a portfolio of {@link PuzzleSolver}s of different
+     * configurations.
+     *
+     * @param configurations
+     *            The names of SAT4J solver configurations. A null stands for
+     *            the default.
+     * @return The portfolio solver.
+     */
+    public static PortfolioSolver ofConfigurations(final String... configurations) {
+        final SolverEngine[] members = new SolverEngine[configurations.length];
+        for (int i = 0; i < configurations.length; i++) {
+            final PuzzleSolver solver = new PuzzleSolver();
+            solver.setConfiguration(configurations[i]);
+            members[i] = solver;
+        }
+        return new PortfolioSolver(members);
+    }
+
+    // public methods
+
+    /***
+     * Solve a number place puzzle. This method blocks until any of the
+     * members finishes.
+     *
+     * @param puzzle
+     *            The puzzle to solve.
+     * @return A solution, or null if no solution was found.
+     */
+    public synchronized byte[][] solve(final byte[][] puzzle) {
+        return race(new Job<byte[][]>() {
+            public byte[][] run(final SolverEngine engine) {
+                return engine.solve(puzzle);
+            }
+        });
+    }
+
+    /***
+     * Count the solutions of a number place puzzle, up to a limit, by all
+     * members in parallel, and take the count of the first member that
+     * finishes. This method blocks until any of the members finishes.
+     *
+     * @param puzzle
+     *            The puzzle.
+     * @param limit
+     *            The maximum number of solutions to count.
+     * @return The number of solutions, which is no more than limit.
+     */
+    public synchronized int countSolutions(final byte[][] puzzle, final int limit) {
+        return race(new Job<Integer>() {
+            public Integer run(final SolverEngine engine) {
+                return engine.countSolutions(puzzle, limit);
+            }
+        });
+    }
+
+    /***
+     * Stop solving the puzzle by all members. The invocation of
+     * {@link #solve(byte[][])} or {@link #countSolutions(byte[][], int)} in
+     * another thread soon stops all members, even those not started yet, and
+     * selects no winner. This method itself returns very soon.
+     */
+    public void stop() {
+        mIsStopped = true;
+        for (SolverEngine member : mMembers) {
+            member.stop();
+        }
+    }
+
+    /***
+     * Indicates whether the recent invocation of {@link #solve(byte[][])} has
+     * stopped by {@link #stop()}.
+     *
+     * @return true if stopped.
+     */
+    public boolean isStopped() {
+        return mIsStopped;
+    }
+
+    /***
+     * Return the member that gave the answer to the recent puzzle.
+     *
+     * @return The member, or null if no member finished.
+     */
+    public synchronized SolverEngine getWinner() {
+        return mWinner < 0 ? null : mMembers[mWinner];
+    }
+
+    /***
+     * Terminate the worker threads. This instance can't be used after this
+     * method is invoked.
+     */
+    public void shutdown() {
+        stop();
+        mExecutor.shutdown();
+    }
+
+    // Racing
+
+    /***
+     * Run a job on all members in parallel, and return the result of the first
+     * member that finishes without being stopped. The other members are
+     * stopped, and this method waits for them so that they are ready for the
+     * next job.
+     * <p>
+     * {@link #stop()} may be invoked before some members start solving, when
+     * they would ignore it, so this method checks {@link #mIsStopped}
+     * periodically and stops all members once it is set. No member wins then.
+     *
+     * @param job
+     *            The job.
+     * @return The result of the winner, or that of the first member if this
+     *         solver or all members were stopped.
+     */
+    private <T> T race(final Job<T> job) {
+        mIsStopped = false;
+        mWinner = -1;
+
+        final int n = mMembers.length;
+        final CompletionService<Integer> completion = new ExecutorCompletionService<Integer>(mExecutor);
+        final Future<?>[] futures = new Future<?>[n];
+        final Object[] results = new Object[n];
+        for (int i = 0; i < n; i++) {
+            final int index = i;
+            futures[i] = completion.submit(new Runnable() {
+                public void run() {
+                    results[index] = job.run(mMembers[index]);
+                }
+            }, index);
+        }
+
+        try {
+            int finished = 0;
+            while (finished < n && mWinner < 0 && !mIsStopped) {
+                final Future<Integer> future = completion.poll(STOP_INTERVAL, TimeUnit.MILLISECONDS);
+                if (future == null) continue;
+                finished++;
+                final int i = future.get();
+                if (!mIsStopped && !mMembers[i].isStopped()) mWinner = i;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            stopAll(futures);
+        }
+
+        @SuppressWarnings("unchecked")
+        final T result = (T)results[mWinner < 0 ? 0 : mWinner];
+        return result;
+    }
+
+    /***
+     * Stop all members and wait for them to finish.
+     *
+     * @param futures
+     *            The futures of the jobs on the members.
+     */
+    private void stopAll(final Future<?>[] futures) {
+        boolean interrupted = false;
+        for (int i = 0; i < futures.length; i++) {
+            while (!futures[i].isDone()) {
+                mMembers[i].stop();
+                try {
+                    futures[i].get(STOP_INTERVAL, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                } catch (ExecutionException e) {
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+}
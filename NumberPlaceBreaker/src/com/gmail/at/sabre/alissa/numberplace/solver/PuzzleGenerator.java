@@ -0,0 +1,411 @@
+package com.gmail.at.sabre.alissa.numberplace.solver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.sat4j.core.VecInt;
+import org.sat4j.minisat.SolverFactory;
+import org.sat4j.specs.ContradictionException;
+import org.sat4j.specs.IConstr;
+import org.sat4j.specs.ISolver;
+import org.sat4j.specs.TimeoutException;
+
+/***
+ * Generate number place puzzles that have unique solutions.
+ * <p>
+ * A puzzle is generated in two steps. First, a random full grid is built by
+ * a SAT solver from random blocks on the diagonal. Then, the clues are
+ * removed one by one in a random order, and a removal is undone if the puzzle
+ * no longer has a unique solution. The result is a minimal puzzle, i.e.,
+ * removing any more clue makes the solution ambiguous.
+ * <p>
+ * A uniqueness test is a single SAT search. The rules of number place are
+ * encoded once into a SAT solver of each worker thread, and the full grid is
+ * excluded by a clause guarded by a selector variable. The clues of a
+ * puzzle, along with the selector, are passed as assumptions, and the puzzle
+ * is unique if and only if the solver finds no model. Puzzles solved by
+ * singles alone are known to be unique without the SAT solver.
+ * <p>
+ * Different removal orders lead to different puzzles of different numbers of
+ * clues. Several minimisation attempts of a same full grid, each with its own
+ * order, run in parallel, and the one with the fewest clues is taken.
+ * <p>
+ * The output is determined by the seed (and the version of SAT4J) only. Each
+ * random choice depends on the seed, the index of the puzzle in the sequence,
+ * and the index of the attempt, but never on the number of threads or on
+ * their timing.
+ * <p>
+ * Each worker thread is kept for the lifetime of this object. Invoke
+ * {@link #shutdown()} when the instance is no longer needed.
+ *
+ * @author alissa
+ */
+public class PuzzleGenerator {
+
+    /***
+     * The default number of minimisation attempts for each puzzle.
+     */
+    public static final int DEFAULT_ATTEMPTS = 8;
+
+    /***
+     * The dimension of the basic block.
+     * It is 3 for a standard Number Place puzzle.
+     */
+    private final int mN;
+
+    /***
+     * The dimension (i.e., both the height and the width) of the whole puzzle.
+     * It is 9 for a standard Number Place puzzle.
+     */
+    private final int mNN;
+
+    /***
+     * Provides the rules of number place and their variable encoding.
+     */
+    private final PuzzleSolver mRules;
+
+    private final long mSeed;
+
+    private final ExecutorService mExecutor;
+
+    /***
+     * The SAT solver of each worker thread. A solver is not shared among
+     * threads.
+     */
+    private final ThreadLocal<ISolver> mSolvers = new ThreadLocal<ISolver>() {
+        @Override
+        protected ISolver initialValue() {
+            return newRuleSolver();
+        }
+    };
+
+    /***
+     * The number of selector variables retired in the SAT solver of each
+     * worker thread. The solver is replaced by a new one after
+     * {@link PuzzleSolver#MAX_RETIRED_SELECTORS} of them, since each
+     * minimisation leaves its selector and the clauses learned from it behind.
+     * The answers of the solver don't depend on them, so a same seed still
+     * gives a same pack.
+     */
+    private final ThreadLocal<int[]> mRetiredSelectors = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[1];
+        }
+    };
+
+    private int mAttempts = DEFAULT_ATTEMPTS;
+
+    /***
+     * The index of the next puzzle in the sequence.
+     */
+    private long mIndex;
+
+    /***
+     * The solution of the recent puzzle.
+     */
+    private byte[][] mSolution;
+
+    /***
+     * Create a generator for standard nine by nine puzzles, using as many
+     * worker threads as the processors.
+     *
+     * @param seed
+     *            The seed of the puzzle sequence.
+     */
+    public PuzzleGenerator(final long seed) {
+        this(3, seed, Runtime.getRuntime().availableProcessors());
+    }
+
+    /***
+     * Create a generator for puzzles of any size.
+     *
+     * @param n
+     *            The dimension of the basic block, in range 2..5. The whole
+     *            puzzle is n * n by n * n cells.
+     * @param seed
+     *            The seed of the puzzle sequence.
+     * @param threads
+     *            The number of worker threads for minimisation attempts. It
+     *            doesn't affect the puzzles generated.
+     */
+    public PuzzleGenerator(final int n, final long seed, final int threads) {
+        if (threads < 1) throw new IllegalArgumentException(String.format("threads must be positive but %d", threads));
+        mN = n;
+        mNN = n * n;
+        mRules = new PuzzleSolver(n);
+        mSeed = seed;
+        mExecutor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, "PuzzleGenerator");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    // public methods
+
+    /***
+     * Set the number of minimisation attempts for each puzzle. More attempts
+     * tend to give puzzles of fewer clues. Note that the puzzles generated
+     * depend on it as well as on the seed.
+     *
+     * @param attempts
+     *            The number of attempts, {@link #DEFAULT_ATTEMPTS} by default.
+     */
+    public synchronized void setAttempts(final int attempts) {
+        if (attempts < 1) throw new IllegalArgumentException(String.format("attempts must be positive but %d", attempts));
+        mAttempts = attempts;
+    }
+
+    /***
+     * Generate the next puzzle in the sequence. This method may block for
+     * some long time. UI thread should not invoke it.
+     *
+     * @return The puzzle, that has a unique solution.
+     */
+    public synchronized byte[][] generate() {
+        final long index = mIndex++;
+        final byte[][] solution = buildGrid(new Random(mix(mSeed, index, -1)));
+
+        final List<Future<byte[][]>> futures = new ArrayList<Future<byte[][]>>(mAttempts);
+        for (int i = 0; i < mAttempts; i++) {
+            final Random random = new Random(mix(mSeed, index, i));
+            futures.add(mExecutor.submit(new Callable<byte[][]>() {
+                public byte[][] call() throws Exception {
+                    return minimize(solution, random);
+                }
+            }));
+        }
+
+        // Take the fewest clues, and the earliest attempt for a tie, so that
+        // the result doesn't depend on which attempt finishes first.
+        byte[][] best = null;
+        int bestClues = Integer.MAX_VALUE;
+        try {
+            for (Future<byte[][]> future : futures) {
+                final byte[][] puzzle = future.get();
+                final int clues = countClues(puzzle);
+                if (clues < bestClues) {
+                    best = puzzle;
+                    bestClues = clues;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            for (Future<byte[][]> future : futures) {
+                future.cancel(false);
+            }
+        }
+
+        mSolution = solution;
+        return best;
+    }
+
+    /***
+     * Return the solution of the puzzle that {@link #generate()} returned
+     * recently.
+     *
+     * @return The solution, or null if no puzzle was generated.
+     */
+    public synchronized byte[][] getSolution() {
+        return mSolution;
+    }
+
+    /***
+     * Terminate the worker threads. This instance can't be used after this
+     * method is invoked.
+     */
+    public void shutdown() {
+        mExecutor.shutdown();
+    }
+
+    // Generation
+
+    /***
+     * Build a random full grid. The blocks on the diagonal, that share no
+     * row or column, take random permutations of the digits, and the rest is
+     * completed by a SAT solver. The solver is a new one for each grid, so
+     * that the model it finds depends on the diagonal blocks only, not on the
+     * clauses it learned before.
+     *
+     * @param random
+     *            The source of the random choices.
+     * @return The full grid.
+     */
+    private byte[][] buildGrid(final Random random) {
+        final ISolver solver = newRuleSolver();
+
+        final VecInt filled = new VecInt(mNN * mN);
+        final int[] digits = new int[mNN];
+        for (int b = 0; b < mN; b++) {
+            for (int i = 0; i < mNN; i++) digits[i] = i + 1;
+            shuffle(digits, random);
+            for (int i = 0; i < mNN; i++) {
+                filled.push(mRules.var(b * mN + i % mN, b * mN + i / mN, digits[i]));
+            }
+        }
+
+        final byte[][] grid = new byte[mNN][mNN];
+        try {
+            if (!solver.isSatisfiable(filled)) throw new IllegalStateException("Diagonal blocks have no completion");
+        } catch (TimeoutException e) {
+            throw new RuntimeException(e);
+        }
+        final int[] model = solver.model();
+        final int cellVariables = mNN * mNN * mNN;
+        for (int i = 0; i < model.length; i++) {
+            final int id = model[i];
+            if (id > 0 && id <= cellVariables) grid[mRules.varY(id)][mRules.varX(id)] = (byte)mRules.varD(id);
+        }
+        return grid;
+    }
+
+    /***
+     * Remove the clues of a full grid one by one in a random order, as long
+     * as the solution stays unique. It runs on a worker thread.
+     *
+     * @param solution
+     *            The full grid. It is not modified.
+     * @param random
+     *            The source of the random order.
+     * @return A minimal puzzle whose unique solution is the full grid.
+     */
+    private byte[][] minimize(final byte[][] solution, final Random random) {
+        final ISolver solver = mSolvers.get();
+        final CandidateGrid grid = new CandidateGrid(mN);
+
+        final byte[][] puzzle = new byte[mNN][];
+        for (int y = 0; y < mNN; y++) puzzle[y] = solution[y].clone();
+
+        // The clause excludes the solution when the selector is assumed, so
+        // that any model under the selector is another solution.
+        final int selector = solver.nextFreeVarId(true);
+        final VecInt clause = new VecInt(mNN * mNN + 1);
+        clause.push(-selector);
+        for (int y = 0; y < mNN; y++) {
+            for (int x = 0; x < mNN; x++) {
+                clause.push(-mRules.var(x, y, solution[y][x]));
+            }
+        }
+        IConstr blocking = null;
+
+        try {
+            blocking = solver.addClause(clause);
+
+            final VecInt assumptions = new VecInt(mNN * mNN + 1);
+            for (int cell : shuffle(mNN * mNN, random)) {
+                final int x = cell % mNN;
+                final int y = cell / mNN;
+                final byte d = puzzle[y][x];
+                puzzle[y][x] = 0;
+
+                // Singles alone solve the puzzle only if it is unique.
+                if (grid.load(puzzle) && grid.fillSingles() >= 0 && grid.isSolved()) continue;
+
+                assumptions.clear();
+                assumptions.push(selector);
+                for (int v = 0; v < mNN; v++) {
+                    for (int u = 0; u < mNN; u++) {
+                        if (puzzle[v][u] > 0) assumptions.push(mRules.var(u, v, puzzle[v][u]));
+                    }
+                }
+                if (solver.isSatisfiable(assumptions)) puzzle[y][x] = d;
+            }
+
+        } catch (ContradictionException e) {
+            throw new RuntimeException(e);
+        } catch (TimeoutException e) {
+            throw new RuntimeException(e);
+        } finally {
+            if (blocking != null) solver.removeConstr(blocking);
+            clause.clear();
+            clause.push(-selector);
+            try {
+                solver.addClause(clause);
+            } catch (ContradictionException e) {
+                // Never happens, since no clause forces the selector true.
+            }
+            final int[] retired = mRetiredSelectors.get();
+            if (++retired[0] >= PuzzleSolver.MAX_RETIRED_SELECTORS) {
+                retired[0] = 0;
+                mSolvers.remove();
+            }
+        }
+
+        return puzzle;
+    }
+
+    /***
+     * Create a new SAT solver holding the rules of number place.
+     *
+     * @return The SAT solver.
+     */
+    private ISolver newRuleSolver() {
+        final ISolver solver = SolverFactory.newDefault();
+        try {
+            mRules.getPuzzleRules().addTo(solver);
+        } catch (ContradictionException e) {
+            throw new RuntimeException(e);
+        }
+        return solver;
+    }
+
+    // Utilities
+
+    private static int countClues(final byte[][] puzzle) {
+        int n = 0;
+        for (byte[] row : puzzle) {
+            for (byte d : row) {
+                if (d > 0) n++;
+            }
+        }
+        return n;
+    }
+
+    /***
+     * Return the numbers 0..n-1 in a random order.
+     */
+    private static int[] shuffle(final int n, final Random random) {
+        final int[] a = new int[n];
+        for (int i = 0; i < n; i++) a[i] = i;
+        shuffle(a, random);
+        return a;
+    }
+
+    /***
+     * Shuffle an array in place by Fisher-Yates.
+     */
+    private static void shuffle(final int[] a, final Random random) {
+        for (int i = a.length - 1; i > 0; i--) {
+            final int j = random.nextInt(i + 1);
+            final int t = a[i];
+            a[i] = a[j];
+            a[j] = t;
+        }
+    }
+
+    /***
+     * Derive a seed for a random choice from the seed of the sequence, the
+     * index of the puzzle, and the index of the attempt, by SplitMix64
+     * finalizer.
+     */
+    private static long mix(final long seed, final long index, final long attempt) {
+        long z = seed + index * 0x9E3779B97F4A7C15L + attempt * 0xC2B2AE3D27D4EB4FL;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
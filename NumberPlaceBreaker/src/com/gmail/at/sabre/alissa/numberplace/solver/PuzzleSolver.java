@@ -1,34 +1,229 @@
 package com.gmail.at.sabre.alissa.numberplace.solver;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
 import org.sat4j.core.VecInt;
 import org.sat4j.minisat.SolverFactory;
 import org.sat4j.specs.ContradictionException;
+import org.sat4j.specs.IConstr;
 import org.sat4j.specs.ISolver;
 import org.sat4j.specs.ISolverService;
+import org.sat4j.specs.IVecInt;
+import org.sat4j.specs.SearchListener;
 import org.sat4j.specs.TimeoutException;
+import org.sat4j.tools.SearchListenerAdapter;
 
 /***
  * Solve a number place puzzle using a SAT solver.
+ * <p>
+ * The rules of number place are encoded only once, into a SAT solver that an
+ * instance of this class keeps for its lifetime. The givens of each puzzle are
+ * then passed to the solver as assumptions, so that solving puzzles one after
+ * another costs only the search for each of them.
+ * <p>
+ * Before the SAT solver is invoked, the cells forced by naked singles and
+ * hidden singles are filled by a simple propagation over candidate bitmasks.
+ * Many published puzzles are solved by the propagation alone, and the SAT
+ * solver is not involved at all for them. Otherwise, the filled cells are
+ * passed to the SAT solver as assumptions, so it searches only the cells left
+ * empty. The number of cells filled by each stage is a part of the
+ * {@link SolveResult}.
+ * <p>
+ * Alternatively, with {@link Encoding#COMPACT}, a small SAT instance is built
+ * for each puzzle. It has variables only for the candidates left after the
+ * propagation and no clauses already satisfied by the filled cells. See
+ * {@link #getVariableCount()} and {@link #getClauseCount()} for its size.
+ * <p>
+ * A puzzle larger than the standard nine by nine, e.g., 16 by 16 or 25 by 25,
+ * can be solved by specifying the dimension of its basic block to the
+ * constructor. For such a puzzle, "at most one" constraints among more than
+ * nine literals are encoded by a sequential counter, whose size is linear to
+ * the number of the literals, instead of pairwise exclusion clauses, whose
+ * size is quadratic.
+ * <p>
+ * Counting solutions of a puzzle uses the same solver. After each model, a
+ * blocking clause, which is guarded by a selector variable assumed only
+ * during the counting, excludes the model from the following search.
+ * {@link #iterateSolutions(byte[][])} enumerates solutions in the same way,
+ * but lazily, one solution at a time. A selector is used only once and then
+ * fixed false, but it and the clauses learned from the blocking clauses stay
+ * in the solver, so the solver is discarded and built again after
+ * {@link #MAX_RETIRED_SELECTORS} selectors, to keep the cost of each search
+ * bounded over a long run.
+ * <p>
+ * {@link #findBackbone(byte[][])} tells the cells that have a same digit in
+ * all solutions of a puzzle, even if the puzzle has many solutions, by a few
+ * searches under assumptions on the same solver.
  *
  * @author alissa
  */
-public class PuzzleSolver {
+public class PuzzleSolver implements SolverEngine {
 
 	/***
 	 * The dimension of the basic block.
 	 * It is 3 for a standard Number Place puzzle.
 	 */
-	private static final int N = 3;
+	private final int mN;
 
 	/***
 	 * The dimension (i.e., both the height and the width) of the whole puzzle.
 	 * It is 9 for a standard Number Place puzzle.
 	 */
-	private static final int NN = N * N;
+	private final int mNN;
+
+    /***
+     * The largest number of literals that an "at most one" constraint is
+     * encoded into pairwise exclusion clauses. A constraint with more literals
+     * is encoded by a sequential counter.
+     */
+    private static final int PAIRWISE_LIMIT = 9;
+
+    /***
+     * The number of selector variables retired in {@link #mRuleSolver}, after
+     * which it is discarded and built again on the next use. Rebuilding takes
+     * about as long as a few searches, while each retired selector leaves a
+     * unit clause and some learned clauses behind.
+     */
+    public static final int MAX_RETIRED_SELECTORS = 1000;
+
+    /***
+     * The ways to encode a puzzle into a SAT instance.
+     */
+    public enum Encoding {
+
+        /***
+         * Encode the rules of number place for all cells and digits only
+         * once, and pass the filled cells of each puzzle as assumptions. It
+         * is the default.
+         */
+        FULL,
+
+        /***
+         * Encode each puzzle into a separate SAT instance, only with the
+         * variables for the candidates of the empty cells and the clauses
+         * among them.
+         */
+        COMPACT,
+    }
 
     private volatile boolean mIsStopped;
 
-    private ISolver mSolver;
+    private Encoding mEncoding = Encoding.FULL;
+
+    /***
+     * The name of the SAT4J solver configuration, or null for the default.
+     */
+    private String mConfiguration;
+
+    /***
+     * A listener to receive the result of each puzzle solved.
+     */
+    public interface Listener {
+
+        /***
+         * Receive the result of a puzzle. It is invoked on the thread that
+         * solved the puzzle, before the solving method returns.
+         *
+         * @param result
+         *            The result.
+         */
+        public void onResult(SolveResult result);
+    }
+
+    private volatile Listener mListener;
+
+    /***
+     * The SAT solver holding the rules of number place for
+     * {@link Encoding#FULL}. It is created on the first invocation of
+     * {@link #solve(byte[][])} and is reused for the following puzzles. The
+     * clauses it learns are derived from the rules only, so they are valid for
+     * any puzzle.
+     */
+    private ISolver mRuleSolver;
+
+    /***
+     * The number of selector variables retired in {@link #mRuleSolver}.
+     */
+    private int mRetiredSelectors;
+
+    /***
+     * The SAT solver being used.
+     */
+    private volatile ISolver mSolver;
+
+    /***
+     * A work area to pass filled cells to {@link #mSolver} as assumptions.
+     */
+    private final VecInt mAssumptions;
+
+    /***
+     * The variable id of each candidate for {@link Encoding#COMPACT}, indexed
+     * by cell * NN + d - 1, or 0 if no variable is allocated.
+     */
+    private final int[] mCompactVar;
+
+    /***
+     * The cell index of each variable for {@link Encoding#COMPACT}.
+     */
+    private final int[] mCompactCell;
+
+    /***
+     * The digit of each variable for {@link Encoding#COMPACT}.
+     */
+    private final int[] mCompactDigit;
+
+    /***
+     * The number of variables that represent a digit in a cell. The
+     * variables of larger ids are auxiliary ones.
+     */
+    private int mCellVariableCount;
+
+    private int mVariableCount;
+
+    private int mClauseCount;
+
+    /***
+     * A work area to fill forced cells before the SAT solver is invoked.
+     */
+    private final CandidateGrid mGrid;
+
+    private int mGivenCount;
+
+    private int mPropagatedCount;
+
+    private int mSearchedCount;
+
+    /***
+     * Create a solver for standard nine by nine puzzles.
+     */
+    public PuzzleSolver() {
+        this(3);
+    }
+
+    /***
+     * Create a solver for puzzles of any size.
+     *
+     * @param n
+     *            The dimension of the basic block, in range 2..5. The whole
+     *            puzzle is n * n by n * n cells, and its digits are in range
+     *            1..n*n.
+     */
+    public PuzzleSolver(final int n) {
+        mGrid = new CandidateGrid(n);
+        mN = n;
+        mNN = n * n;
+        final int maxVar = mNN * mNN * mNN;
+        mAssumptions = new VecInt(mNN * mNN);
+        mCompactVar = new int[maxVar];
+        mCompactCell = new int[maxVar + 1];
+        mCompactDigit = new int[maxVar + 1];
+    }
 
     // public methods
 
@@ -41,29 +236,353 @@ public class PuzzleSolver {
      * @return
      *            A solution, or null if no solution was found.
      */
-    public synchronized byte[][] solve(final byte[][] puzzle) {
+    public byte[][] solve(final byte[][] puzzle) {
+        return solveWithResult(puzzle).getSolution();
+    }
+
+    /***
+     * Solve a number place puzzle, and tell how it went. This method may block
+     * for some long time, as {@link #solve(byte[][])} does.
+     *
+     * @param puzzle
+     *            The puzzle to solve.
+     * @return The result, including the solution if any.
+     */
+    public SolveResult solveWithResult(final byte[][] puzzle) {
+        return solve(puzzle, Budget.UNLIMITED);
+    }
+
+    /***
+     * Solve a number place puzzle within a budget, and tell how it went. If
+     * the budget runs out, this method gives up and returns a result of
+     * {@link SolveResult.Outcome#TIMED_OUT}.
+     *
+     * @param puzzle
+     *            The puzzle to solve.
+     * @param budget
+     *            The budget.
+     * @return The result, including the solution if any.
+     */
+    public synchronized SolveResult solve(final byte[][] puzzle, final Budget budget) {
+
+        final long start = System.nanoTime();
+        long encodingStart = start;
+        long searchStart = start;
+        SolveResult.Outcome outcome = SolveResult.Outcome.UNSATISFIABLE;
+        byte[][] solution = null;
+        ISolver solver = null;
+        Map<String, Number> stat = null;
 
         try {
 
             mIsStopped = false;
 
-            mSolver = SolverFactory.newDefault();
-            mSolver.newVar(MAXVAR);
+            final boolean consistent = propagate(puzzle);
+            encodingStart = searchStart = System.nanoTime();
+            if (consistent) {
+                if (mGrid.isSolved()) {
+                    outcome = SolveResult.Outcome.SOLVED;
+                    solution = mGrid.toArray();
+                } else {
+                    solver = prepareSolver();
+                    final IVecInt assumptions = makeAssumptions();
+                    searchStart = System.nanoTime();
+                    stat = solver.getStat();
 
-            addPuzzleRules();
-            addInstanceConstraints(puzzle);
-
-            if (mSolver.isSatisfiable()) {
-                return extractSolution();
+                    final long timeout = solver.getTimeoutMs();
+                    final SearchListener<ISolverService> listener = solver.getSearchListener();
+                    try {
+                        applyBudget(solver, budget, start);
+                        if (!mIsStopped && solver.isSatisfiable(assumptions)) {
+                            mSearchedCount = mNN * mNN - mGrid.getFilledCount();
+                            outcome = SolveResult.Outcome.SOLVED;
+                            solution = extractSolution();
+                        }
+                    } finally {
+                        // The rule solver is reused for the next puzzle.  SAT4J
+                        // keeps a conflict based timeout for the following
+                        // searches unless it is expired.
+                        solver.expireTimeout();
+                        solver.setTimeoutMs(timeout);
+                        solver.setSearchListener(listener);
+                    }
+                }
             }
 
         } catch (ContradictionException e) {
         } catch (TimeoutException e) {
+            outcome = SolveResult.Outcome.TIMED_OUT;
         } finally {
             // Free expensive resources.
             mSolver = null;
         }
 
+        final long end = System.nanoTime();
+        if (outcome != SolveResult.Outcome.SOLVED && mIsStopped) outcome = SolveResult.Outcome.STOPPED;
+
+        final Runtime runtime = Runtime.getRuntime();
+        final SolveResult result;
+        if (stat == null) {
+            result = new SolveResult(outcome, solution,
+                    mGivenCount, mPropagatedCount, mSearchedCount,
+                    encodingStart - start, searchStart - encodingStart, end - searchStart,
+                    0, 0, 0, 0, runtime.totalMemory() - runtime.freeMemory());
+        } else {
+            // The statistics of a reused solver are cumulative.
+            final Map<String, Number> after = solver.getStat();
+            result = new SolveResult(outcome, solution,
+                    mGivenCount, mPropagatedCount, mSearchedCount,
+                    encodingStart - start, searchStart - encodingStart, end - searchStart,
+                    delta(stat, after, "decisions"),
+                    delta(stat, after, "conflicts"),
+                    delta(stat, after, "propagations"),
+                    delta(stat, after, "learnedclauses"),
+                    runtime.totalMemory() - runtime.freeMemory());
+        }
+
+        final Listener listener = mListener;
+        if (listener != null) listener.onResult(result);
+
+        return result;
+    }
+
+    /***
+     * Count the solutions of a number place puzzle, up to a limit. Each
+     * solution found is excluded from the following search by a blocking
+     * clause guarded by a selector, that is retired after the counting (see
+     * the class description.) This method may block for some long time, as
+     * {@link #solve(byte[][])} does.
+     *
+     * @param puzzle
+     *            The puzzle.
+     * @param limit
+     *            The maximum number of solutions to count.
+     * @return The number of solutions, which is no more than limit.
+     */
+    public synchronized int countSolutions(final byte[][] puzzle, final int limit) {
+
+        int count = 0;
+        final List<IConstr> blockingClauses = new ArrayList<IConstr>();
+        int selector = 0;
+
+        try {
+
+            mIsStopped = false;
+
+            if (!propagate(puzzle)) return 0;
+            if (mGrid.isSolved()) return Math.min(limit, 1);
+
+            final ISolver solver = prepareSolver();
+            final VecInt assumptions = makeAssumptions();
+
+            // The blocking clauses are only in effect when the selector is
+            // assumed.  The clauses the solver learns from them contain the
+            // negation of the selector, so they too are harmless after this
+            // counting.
+            selector = solver.nextFreeVarId(true);
+            assumptions.push(selector);
+
+            while (count < limit && !mIsStopped && solver.isSatisfiable(assumptions)) {
+                count++;
+                if (count < limit) {
+                    final IVecInt clause = makeBlockingClause(selector);
+                    blockingClauses.add(solver.addClause(clause));
+                }
+            }
+
+        } catch (ContradictionException e) {
+        } catch (TimeoutException e) {
+        } finally {
+            retireSelector(mSolver, selector, blockingClauses);
+            mSolver = null;
+        }
+
+        return count;
+    }
+
+    /***
+     * Enumerate the solutions of a puzzle lazily. No solution is searched
+     * until it is requested through the returned iterator, so that a caller
+     * can walk the solutions of a puzzle with a huge number of them and stop
+     * at any time.
+     * <p>
+     * The enumeration always uses the rules of {@link Encoding#FULL},
+     * regardless of the encoding set, and the solver for them is shared with
+     * {@link #solve(byte[][])}. This object may solve other puzzles while an
+     * enumeration is in progress.
+     *
+     * @param puzzle
+     *            The puzzle.
+     * @return An iterator over the solutions.
+     */
+    public synchronized SolutionIterator iterateSolutions(final byte[][] puzzle) {
+        return new SolutionIterator(puzzle);
+    }
+
+    /***
+     * Find the givens that make a puzzle unsolvable, e.g., digits misread by
+     * OCR. Each given is passed to the SAT solver as an assumption, so that
+     * the solver can tell a subset of the givens that has no solution (an
+     * unsatisfiable core.) The subset is then minimized by dropping the givens
+     * one by one as long as the rest still has no solution, so that removing
+     * or correcting any one of the returned givens resolves the conflict among
+     * them. (The puzzle may have another conflict, though.)
+     * <p>
+     * The result doesn't depend on the encoding. This method may block for some
+     * long time, as {@link #solve(byte[][])} does.
+     *
+     * @param puzzle
+     *            The puzzle.
+     * @return A mask of the conflicting givens indexed as [y][x], or null if
+     *         the puzzle has a solution or the diagnosis was stopped.
+     */
+    public synchronized boolean[][] findConflictingGivens(final byte[][] puzzle) {
+
+        try {
+
+            mIsStopped = false;
+
+            final ISolver solver = prepareRuleSolver();
+            mSolver = solver;
+
+            final VecInt givens = new VecInt();
+            for (int y = 0; y < mNN; y++) {
+                for (int x = 0; x < mNN; x++) {
+                    final int d = puzzle[y][x];
+                    if (d > 0 && d <= mNN) givens.push(var(x, y, d));
+                }
+            }
+            if (mIsStopped || solver.isSatisfiable(givens)) return null;
+
+            // Start with the core SAT4J explains, then drop one given at a
+            // time, keeping it only if the rest is satisfiable without it.
+            // When the rest is unsatisfiable, it is narrowed to the smaller
+            // core SAT4J explains, keeping the order, so that the givens
+            // before i, that are known to be needed, stay before i.
+            final VecInt core = new VecInt();
+            final IVecInt explanation = solver.unsatExplanation();
+            (explanation == null || explanation.isEmpty() ? givens : explanation).copyTo(core);
+            final VecInt work = new VecInt();
+            int i = 0;
+            while (i < core.size()) {
+                if (mIsStopped) return null;
+                work.clear();
+                for (int j = 0; j < core.size(); j++) {
+                    if (j != i) work.push(core.get(j));
+                }
+                if (solver.isSatisfiable(work)) {
+                    i++;
+                } else {
+                    final IVecInt smaller = solver.unsatExplanation();
+                    core.clear();
+                    for (int j = 0; j < work.size(); j++) {
+                        final int lit = work.get(j);
+                        if (smaller == null || smaller.isEmpty() || smaller.contains(lit)) core.push(lit);
+                    }
+                }
+            }
+
+            final boolean[][] conflicts = new boolean[mNN][mNN];
+            for (int j = 0; j < core.size(); j++) {
+                final int id = Math.abs(core.get(j));
+                conflicts[varY(id)][varX(id)] = true;
+            }
+            return conflicts;
+
+        } catch (ContradictionException e) {
+        } catch (TimeoutException e) {
+        } finally {
+            mSolver = null;
+        }
+
+        return null;
+    }
+
+    /***
+     * Find the cells determined by a puzzle, i.e., the cells that have a same
+     * digit in all of its solutions (the backbone.) It is useful for a puzzle
+     * partially entered or having two or more solutions.
+     * <p>
+     * The cells forced by naked singles and hidden singles are determined
+     * without the SAT solver. For each of the other cells, the digit of the
+     * first model found is determined if and only if the solver finds no
+     * model without it. Whenever the solver finds a model, all cells whose
+     * digits differ from the first model are known to be undetermined, and
+     * they are not tested any more. A digit found determined is added to the
+     * assumptions of the following tests. Every search is on the same solver
+     * for the rules of number place, so the clauses it learns help the
+     * following searches.
+     * <p>
+     * The result doesn't depend on the encoding. This method may block for some
+     * long time, as {@link #solve(byte[][])} does.
+     *
+     * @param puzzle
+     *            The puzzle.
+     * @return The digits of the determined cells indexed as [y][x], including
+     *         the givens, and 0 for the other cells, or null if the puzzle has
+     *         no solution or the search was stopped.
+     */
+    public synchronized byte[][] findBackbone(final byte[][] puzzle) {
+
+        try {
+
+            mIsStopped = false;
+
+            if (!propagate(puzzle)) return null;
+            final byte[][] backbone = mGrid.toArray();
+            if (mGrid.isSolved()) return backbone;
+
+            final ISolver solver = prepareRuleSolver();
+            mSolver = solver;
+
+            final VecInt assumptions = new VecInt(mNN * mNN + 1);
+            for (int y = 0; y < mNN; y++) {
+                for (int x = 0; x < mNN; x++) {
+                    if (backbone[y][x] > 0) assumptions.push(var(x, y, backbone[y][x]));
+                }
+            }
+            if (mIsStopped || !solver.isSatisfiable(assumptions)) return null;
+
+            // The digit of each empty cell in the first model, or 0 if the
+            // cell is known to be undetermined.
+            final byte[][] first = new byte[mNN][mNN];
+            final int cellVariables = mNN * mNN * mNN;
+            for (int id : solver.model()) {
+                if (id > 0 && id <= cellVariables && backbone[varY(id)][varX(id)] == 0) {
+                    first[varY(id)][varX(id)] = (byte)varD(id);
+                }
+            }
+
+            for (int y = 0; y < mNN; y++) {
+                for (int x = 0; x < mNN; x++) {
+                    final int d = first[y][x];
+                    if (d == 0) continue;
+                    final int literal = var(x, y, d);
+                    assumptions.push(-literal);
+                    final boolean sat = solver.isSatisfiable(assumptions);
+                    assumptions.pop();
+                    if (mIsStopped) return null;
+                    if (sat) {
+                        for (int id : solver.model()) {
+                            if (id > 0 && id <= cellVariables && first[varY(id)][varX(id)] != 0
+                                    && first[varY(id)][varX(id)] != varD(id)) {
+                                first[varY(id)][varX(id)] = 0;
+                            }
+                        }
+                    } else {
+                        backbone[y][x] = (byte)d;
+                        assumptions.push(literal);
+                    }
+                }
+            }
+            return backbone;
+
+        } catch (ContradictionException e) {
+        } catch (TimeoutException e) {
+        } finally {
+            mSolver = null;
+        }
+
         return null;
     }
 
@@ -92,111 +611,641 @@ public class PuzzleSolver {
         return mIsStopped;
     }
 
+    /***
+     * Set a listener to receive the result of each puzzle solved, e.g., to
+     * export the statistics to a metrics system.
+     *
+     * @param listener
+     *            The listener, or null to remove.
+     */
+    public void setListener(final Listener listener) {
+        mListener = listener;
+    }
+
+    /***
+     * Choose the way to encode puzzles.
+     *
+     * @param encoding
+     *            The encoding.
+     */
+    public synchronized void setEncoding(final Encoding encoding) {
+        mEncoding = encoding;
+    }
+
+    /***
+     * Return the way to encode puzzles.
+     *
+     * @return The encoding.
+     */
+    public Encoding getEncoding() {
+        return mEncoding;
+    }
+
+    /***
+     * Choose the configuration of the SAT solver, i.e., its heuristics,
+     * restart strategy, and so on. Different configurations are good at
+     * different puzzles, and running several of them at once is a way to
+     * avoid an unlucky one; see {@link PortfolioSolver}.
+     *
+     * @param name
+     *            The name of a SAT4J solver configuration (e.g., "Glucose",
+     *            "MiniSATHeap", or "BestWL"), or null for the default.
+     * @throws IllegalArgumentException
+     *             If SAT4J has no configuration of the name.
+     */
+    public synchronized void setConfiguration(final String name) {
+        if (name != null && !Arrays.asList(SolverFactory.instance().solverNames()).contains(name)) {
+            throw new IllegalArgumentException("Unknown SAT4J solver " + name);
+        }
+        mConfiguration = name;
+        mRuleSolver = null;
+    }
+
+    /***
+     * Return the configuration of the SAT solver.
+     *
+     * @return The name of the SAT4J solver configuration, or null for the
+     *         default.
+     */
+    public String getConfiguration() {
+        return mConfiguration;
+    }
+
+    /***
+     * Return the number of variables of the SAT instance for the puzzle most
+     * recently solved. It is 0 if the SAT solver was not invoked.
+     *
+     * @return The number of variables.
+     */
+    public int getVariableCount() {
+        return mVariableCount;
+    }
+
+    /***
+     * Return the number of clauses of the SAT instance for the puzzle most
+     * recently solved. It is 0 if the SAT solver was not invoked.
+     *
+     * @return The number of clauses.
+     */
+    public int getClauseCount() {
+        return mClauseCount;
+    }
+
+    /***
+     * Return the number of givens in the puzzle most recently solved. If the
+     * solver is shared by threads, use {@link SolveResult#getGivenCount()}
+     * instead, since another puzzle may have been solved since.
+     *
+     * @return The number of cells.
+     */
+    public int getGivenCount() {
+        return mGivenCount;
+    }
+
+    /***
+     * Return the number of cells that the propagation (naked singles and
+     * hidden singles) filled in the puzzle most recently solved. If the
+     * solver is shared by threads, use
+     * {@link SolveResult#getPropagatedCount()} instead.
+     *
+     * @return The number of cells.
+     */
+    public int getPropagatedCount() {
+        return mPropagatedCount;
+    }
+
+    /***
+     * Return the number of cells that the SAT solver filled in the puzzle
+     * most recently solved. It is 0 if the SAT solver was not invoked or
+     * found no solution. If the solver is shared by threads, use
+     * {@link SolveResult#getSearchedCount()} instead.
+     *
+     * @return The number of cells.
+     */
+    public int getSearchedCount() {
+        return mSearchedCount;
+    }
+
+    /***
+     * Set a budget to a SAT solver.
+     *
+     * @param solver
+     *            The SAT solver.
+     * @param budget
+     *            The budget.
+     * @param start
+     *            The time ({@link System#nanoTime()}) solving the puzzle
+     *            started.
+     * @throws TimeoutException
+     *             If the budget has already run out.
+     */
+    private static void applyBudget(final ISolver solver, final Budget budget, final long start) throws TimeoutException {
+        switch (budget.getKind()) {
+        case MILLISECONDS:
+            final long remaining = budget.getLimit() - (System.nanoTime() - start) / 1000000;
+            if (remaining <= 0) throw new TimeoutException();
+            solver.setTimeoutMs(remaining);
+            break;
+        case CONFLICTS:
+            solver.setTimeoutOnConflicts((int)budget.getLimit());
+            break;
+        case PROPAGATIONS:
+            solver.setSearchListener(new PropagationLimit(solver, budget.getLimit()));
+            break;
+        default:
+            break;
+        }
+    }
+
+    /***
+     * A search listener to expire the timeout of a SAT solver after a number
+     * of propagations, since SAT4J has no such timeout.
+     */
+    private static final class PropagationLimit extends SearchListenerAdapter<ISolverService> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final ISolver mSolver;
+
+        private long mRemaining;
+
+        public PropagationLimit(final ISolver solver, final long limit) {
+            mSolver = solver;
+            mRemaining = limit;
+        }
+
+        @Override
+        public void propagating(final int p, final IConstr reason) {
+            if (--mRemaining < 0) mSolver.expireTimeout();
+        }
+    }
+
+    /***
+     * Compute the increase of a SAT4J statistic.
+     *
+     * @param before
+     *            The statistics before the search.
+     * @param after
+     *            The statistics after the search.
+     * @param key
+     *            The name of the statistic.
+     * @return The increase, or 0 if the solver has no such statistic.
+     */
+    private static long delta(final Map<String, Number> before, final Map<String, Number> after, final String key) {
+        final Number b = before.get(key);
+        final Number a = after.get(key);
+        if (a == null || b == null) return 0;
+        return a.longValue() - b.longValue();
+    }
+
+    // Propagation
+
+    /***
+     * Load a puzzle into {@link #mGrid} and fill the cells forced by naked
+     * singles and hidden singles. The number of cells for each stage is
+     * recorded.
+     *
+     * @param puzzle
+     *            The puzzle instance.
+     * @return False if a contradiction was found.
+     */
+    private boolean propagate(final byte[][] puzzle) {
+        mGivenCount = 0;
+        mPropagatedCount = 0;
+        mSearchedCount = 0;
+        mVariableCount = 0;
+        mClauseCount = 0;
+
+        // The givens are counted before loading, since the load stops at
+        // the first conflicting given.
+        int givens = 0;
+        for (byte[] row : puzzle) {
+            for (byte d : row) {
+                if (d != 0) givens++;
+            }
+        }
+        mGivenCount = givens;
+
+        final CandidateGrid grid = mGrid;
+        if (!grid.load(puzzle)) return false;
+
+        final int n = grid.fillSingles();
+        if (n < 0) return false;
+        mPropagatedCount = n;
+
+        return true;
+    }
+
     // Constraints
 
     /***
-     * Add several clauses to the SAT solver to define the rules of number
-     * place. The clauses added by this method are independent from a number
-     * place puzzle instance.
+     * Prepare a SAT solver for the puzzle in {@link #mGrid}, according to the
+     * encoding, and set it to {@link #mSolver}.
+     *
+     * @return The SAT solver.
+     * @throws ContradictionException
+     *             Never thrown unless the puzzle rules have a serious bug.
+     */
+    private ISolver prepareSolver() throws ContradictionException {
+        final ISolver solver;
+        if (mEncoding == Encoding.COMPACT) {
+            solver = buildCompactSolver();
+        } else {
+            final Rules rules = getPuzzleRules();
+            solver = prepareRuleSolver();
+            mCellVariableCount = mNN * mNN * mNN;
+            mVariableCount = rules.mVariableCount;
+            mClauseCount = rules.mClauses.length;
+        }
+        mSolver = solver;
+        return solver;
+    }
+
+    /***
+     * Return the SAT solver holding the rules of number place, creating it if
+     * this is the first time.
+     *
+     * @return The SAT solver.
+     * @throws ContradictionException
+     *             Never thrown unless the puzzle rules have a serious bug.
+     */
+    private ISolver prepareRuleSolver() throws ContradictionException {
+        if (mRuleSolver == null) {
+            final Rules rules = getPuzzleRules();
+            mRuleSolver = newSolver(rules.mVariableCount, rules.mClauses);
+            mRetiredSelectors = 0;
+        }
+        return mRuleSolver;
+    }
+
+    /***
+     * Create a new SAT solver of the current configuration and add clauses to
+     * it.
+     *
+     * @param nVars
+     *            The number of variables.
+     * @param clauses
+     *            The clauses.
+     * @return The SAT solver.
+     * @throws ContradictionException
+     *             Never thrown unless the clauses have a serious bug.
+     */
+    private ISolver newSolver(final int nVars, final int[][] clauses) throws ContradictionException {
+        final ISolver solver = mConfiguration == null
+                ? SolverFactory.newDefault()
+                : SolverFactory.instance().createSolverByName(mConfiguration);
+        addClauses(solver, nVars, clauses);
+        return solver;
+    }
+
+    /***
+     * Add clauses to a SAT solver.
+     *
+     * @param solver
+     *            The SAT solver.
+     * @param nVars
+     *            The number of variables.
+     * @param clauses
+     *            The clauses.
+     * @throws ContradictionException
+     *             Never thrown unless the clauses have a serious bug.
+     */
+    private static void addClauses(final ISolver solver, final int nVars, final int[][] clauses) throws ContradictionException {
+        solver.newVar(nVars);
+        solver.setExpectedNumberOfClauses(clauses.length);
+        final VecInt v = new VecInt();
+        for (int i = 0; i < clauses.length; i++) {
+            v.clear();
+            final int[] clause = clauses[i];
+            for (int j = 0; j < clause.length; j++) {
+                v.push(clause[j]);
+            }
+            solver.addClause(v);
+        }
+    }
+
+    /***
+     * Build a SAT solver for the puzzle in {@link #mGrid} with
+     * {@link Encoding#COMPACT}. Only the candidates of the empty cells have
+     * variables, and a clause is added only if it is not satisfied by the
+     * filled cells.
      *
+     * @return The SAT solver.
      * @throws ContradictionException
      *             Never thrown unless this method has a serious bug.
      */
-    private void addPuzzleRules() throws ContradictionException {
+    private ISolver buildCompactSolver() throws ContradictionException {
+        final CandidateGrid grid = mGrid;
+
+        int n = 0;
+        for (int i = 0; i < mNN * mNN; i++) {
+            final int m = grid.getCandidates(i);
+            for (int d = 1; d <= mNN; d++) {
+                if ((m & (1 << (d - 1))) != 0) {
+                    n++;
+                    mCompactVar[i * mNN + d - 1] = n;
+                    mCompactCell[n] = i;
+                    mCompactDigit[n] = d;
+                } else {
+                    mCompactVar[i * mNN + d - 1] = 0;
+                }
+            }
+        }
+
+        final List<int[]> clauses = new ArrayList<int[]>();
+        int nVars = n;
+        for (int i = 0; i < mNN * mNN; i++) {
+            if (grid.getDigit(i) == 0) {
+                // The cell contains one of its candidates...
+                final int[] v = new int[Integer.bitCount(grid.getCandidates(i))];
+                int k = 0;
+                for (int d = 1; d <= mNN; d++) {
+                    final int id = mCompactVar[i * mNN + d - 1];
+                    if (id != 0) v[k++] = id;
+                }
+                clauses.add(v);
+
+                // ... and only one.
+                nVars = addAtMostOne(clauses, v, k, nVars);
+            }
+        }
+
+        // No two cells in a row, a column, or a block contain a same digit,
+        // and each digit not filled in a unit is in one of its cells.
+        final int[] v = new int[mNN];
+        for (int[] unit : grid.getUnits()) {
+            for (int d = 1; d <= mNN; d++) {
+                int k = 0;
+                boolean filled = false;
+                for (int i : unit) {
+                    final int id = mCompactVar[i * mNN + d - 1];
+                    if (id != 0) v[k++] = id;
+                    if (grid.getDigit(i) == d) filled = true;
+                }
+                nVars = addAtMostOne(clauses, v, k, nVars);
+                if (!filled && k > 0) clauses.add(Arrays.copyOf(v, k));
+            }
+        }
+
+        mCellVariableCount = n;
+        mVariableCount = nVars;
+        mClauseCount = clauses.size();
+        return newSolver(nVars, clauses.toArray(new int[clauses.size()][]));
+    }
+
+    /***
+     * Add clauses to say at most one of some literals is true. Up to
+     * {@link #PAIRWISE_LIMIT} literals, pairwise exclusion clauses are used.
+     * For more literals, a sequential counter, that needs auxiliary variables
+     * but only a linear number of clauses, is used.
+     *
+     * @param clauses
+     *            The list to add the clauses to.
+     * @param lits
+     *            The literals.
+     * @param n
+     *            The number of literals, i.e., the literals are lits[0] to
+     *            lits[n - 1].
+     * @param nVars
+     *            The number of variables used so far.
+     * @return The number of variables used, including the auxiliary ones
+     *         allocated by this method.
+     */
+    private static int addAtMostOne(final List<int[]> clauses, final int[] lits, final int n, int nVars) {
+        if (n <= PAIRWISE_LIMIT) {
+            for (int i = 0; i < n; i++) {
+                for (int j = i + 1; j < n; j++) {
+                    clauses.add(new int[] { -lits[i], -lits[j] });
+                }
+            }
+        } else {
+            // s(i) is true if one of lits[0] .. lits[i] is true.
+            // s(i) is the variable nVars + 1 + i for i in 0..n-2.
+            final int s = nVars + 1;
+            clauses.add(new int[] { -lits[0], s });
+            for (int i = 1; i < n - 1; i++) {
+                clauses.add(new int[] { -lits[i], s + i });
+                clauses.add(new int[] { -(s + i - 1), s + i });
+                clauses.add(new int[] { -lits[i], -(s + i - 1) });
+            }
+            clauses.add(new int[] { -lits[n - 1], -(s + n - 2) });
+            nVars += n - 1;
+        }
+        return nVars;
+    }
+
+    /***
+     * A set of clauses to define the rules of number place.
+     */
+    static final class Rules {
+
+        /***
+         * The clauses, each of which is an array of Dimacs literals.
+         */
+        public final int[][] mClauses;
+
+        /***
+         * The number of variables used in the clauses, including auxiliary
+         * ones.
+         */
+        public final int mVariableCount;
+
+        public Rules(final int[][] clauses, final int nVars) {
+            mClauses = clauses;
+            mVariableCount = nVars;
+        }
+
+        /***
+         * Add the clauses to a SAT solver, e.g., one of another kind than
+         * {@link PuzzleSolver} uses.
+         *
+         * @param solver
+         *            The SAT solver.
+         * @throws ContradictionException
+         *             Never thrown unless the puzzle rules have a serious bug.
+         */
+        public void addTo(final ISolver solver) throws ContradictionException {
+            addClauses(solver, mVariableCount, mClauses);
+        }
+    }
+
+    /***
+     * The clauses to define the rules of number place for each puzzle size,
+     * shared by all instances of this class.
+     * Use {@link #getPuzzleRules()} to access it.
+     */
+    private static final Map<Integer, Rules> sPuzzleRules = new HashMap<Integer, Rules>();
+
+    /***
+     * Return a set of clauses to define the rules of number place. The clauses
+     * are independent from a number place puzzle instance, so they are built
+     * only once for each puzzle size and shared.
+     *
+     * @return The clauses. The caller must not modify them.
+     */
+    Rules getPuzzleRules() {
+        synchronized (sPuzzleRules) {
+            Rules rules = sPuzzleRules.get(mN);
+            if (rules == null) {
+                final List<int[]> clauses = new ArrayList<int[]>();
+                final int nVars = addPuzzleRules(clauses);
+                rules = new Rules(clauses.toArray(new int[clauses.size()][]), nVars);
+                sPuzzleRules.put(mN, rules);
+            }
+            return rules;
+        }
+    }
+
+    /***
+     * Add several clauses to a list to define the rules of number place. The
+     * clauses added by this method are independent from a number place puzzle
+     * instance.
+     *
+     * @param rules
+     *            The list to add the clauses to.
+     * @return The number of variables used, including auxiliary ones.
+     */
+    private int addPuzzleRules(final List<int[]> rules) {
+
+        int nVars = mNN * mNN * mNN;
+        final int[] v = new int[mNN];
 
         // Each cell contains a digit.
-        for (int y = 0; y < NN; y++) {
-            for (int x = 0; x < NN; x++) {
-                final VecInt v = new VecInt(NN);
-                for (int d = 1; d <= NN; d++) {
-                    v.push(var(x, y, d));
+        for (int y = 0; y < mNN; y++) {
+            for (int x = 0; x < mNN; x++) {
+                for (int d = 1; d <= mNN; d++) {
+                    v[d - 1] = var(x, y, d);
                 }
-                mSolver.addClause(v);
+                rules.add(v.clone());
             }
         }
 
         // No two digits share a same cell.
         // (Each cell contains only one digit.)
-        for (int d1 = 1; d1 <= NN; d1++) {
-            for (int d2 = d1 + 1; d2 <= NN; d2++) {
-                for (int y = 0; y < NN; y++) {
-                    for (int x = 0; x < NN; x++) {
-                        final VecInt v = new VecInt(2);
-                        v.push(-var(x, y, d1));
-                        v.push(-var(x, y, d2));
-                        mSolver.addClause(v);
-                    }
+        for (int y = 0; y < mNN; y++) {
+            for (int x = 0; x < mNN; x++) {
+                for (int d = 1; d <= mNN; d++) {
+                    v[d - 1] = var(x, y, d);
                 }
+                nVars = addAtMostOne(rules, v, mNN, nVars);
             }
         }
 
-        // No two cells in a row contain a same digit.
-        for (int y = 0; y < NN; y++) {
-            for (int x1 = 0; x1 < NN; x1++) {
-                for (int x2 = x1 + 1; x2 < NN; x2++) {
-                    for (int d = 1; d <= NN; d++) {
-                        final VecInt v = new VecInt(2);
-                        v.push(-var(x1, y, d));
-                        v.push(-var(x2, y, d));
-                        mSolver.addClause(v);
-                    }
+        // Each digit appears in a row once and only once.
+        for (int y = 0; y < mNN; y++) {
+            for (int d = 1; d <= mNN; d++) {
+                for (int x = 0; x < mNN; x++) {
+                    v[x] = var(x, y, d);
                 }
+                rules.add(v.clone());
+                nVars = addAtMostOne(rules, v, mNN, nVars);
             }
         }
 
-        // No two cells in a column contain a same digit.
-        for (int x = 0; x < NN; x++) {
-            for (int y1 = 0; y1 < NN; y1++) {
-                for (int y2 = y1 + 1; y2 < NN; y2++) {
-                    for (int d = 1; d <= NN; d++) {
-                        final VecInt v = new VecInt(2);
-                        v.push(-var(x, y1, d));
-                        v.push(-var(x, y2, d));
-                        mSolver.addClause(v);
-                    }
+        // Each digit appears in a column once and only once.
+        for (int x = 0; x < mNN; x++) {
+            for (int d = 1; d <= mNN; d++) {
+                for (int y = 0; y < mNN; y++) {
+                    v[y] = var(x, y, d);
                 }
+                rules.add(v.clone());
+                nVars = addAtMostOne(rules, v, mNN, nVars);
             }
         }
 
-        // No two cells in a 3x3 block contain a same digit.
-        for (int y0 = 0; y0 < NN; y0 += N) {
-            for (int x0 = 0; x0 < NN; x0 += N) {
-                for (int p1 = 0; p1 < NN; p1++) {
-                    final int x1 = x0 + p1 % N;
-                    final int y1 = y0 + p1 / N;
-                    for (int p2 = p1 + 1; p2 < NN; p2++) {
-                        final int x2 = x0 + p2 % N;
-                        final int y2 = y0 + p2 / N;
-                        for (int d = 1; d <= NN; d++) {
-                            final VecInt v = new VecInt(2);
-                            v.push(-var(x1, y1, d));
-                            v.push(-var(x2, y2, d));
-                            mSolver.addClause(v);
-                        }
+        // Each digit appears in a block once and only once.
+        for (int y0 = 0; y0 < mNN; y0 += mN) {
+            for (int x0 = 0; x0 < mNN; x0 += mN) {
+                for (int d = 1; d <= mNN; d++) {
+                    for (int p = 0; p < mNN; p++) {
+                        v[p] = var(x0 + p % mN, y0 + p / mN, d);
                     }
+                    rules.add(v.clone());
+                    nVars = addAtMostOne(rules, v, mNN, nVars);
                 }
             }
         }
+
+        return nVars;
     }
 
     /***
-     * Add a set of clauses to the SAT solver to represent a number place puzzle
-     * instance.
+     * Build a set of assumptions to represent the cells filled in
+     * {@link #mGrid}, i.e., the givens and the cells forced by them.
      *
-     * @param puzzle
-     *            The puzzle instance.
-     * @throws ContradictionException
-     *             When the puzzle included a trivial contradiction.
-     */
-    private void addInstanceConstraints(final byte[][] puzzle) throws ContradictionException {
-        for (int y = 0; y < NN; y++) {
-            for (int x = 0; x < NN; x++) {
-                final int d = puzzle[y][x];
-                if (d > 0) {
-                    final VecInt v = new VecInt(1);
-                    v.push(var(x, y, d));
-                    mSolver.addClause(v);
-                }
+     * @return The assumptions, i.e., the literals of the filled cells. It is
+     *         empty for {@link Encoding#COMPACT}, where filled cells have no
+     *         variables. The returned object is reused by the next
+     *         invocation.
+     */
+    private VecInt makeAssumptions() {
+        final CandidateGrid grid = mGrid;
+        final VecInt v = mAssumptions;
+        v.clear();
+        for (int i = 0; i < mNN * mNN; i++) {
+            final int d = grid.getDigit(i);
+            if (d > 0) {
+                final int id = literal(i, d);
+                if (id != 0) v.push(id);
+            }
+        }
+        return v;
+    }
+
+    /***
+     * Build a blocking clause that excludes the current model of the solver,
+     * when the selector is assumed. Only the cells left empty in
+     * {@link #mGrid} are considered, since the filled cells are same in all
+     * models.
+     *
+     * @param selector
+     *            The selector variable to guard the clause.
+     * @return The blocking clause.
+     */
+    private IVecInt makeBlockingClause(final int selector) {
+        final int[] model = mSolver.model();
+        final VecInt v = new VecInt(mNN * mNN + 1);
+        v.push(-selector);
+        for (int i = 0; i < model.length; i++) {
+            final int id = model[i];
+            if (id > 0) {
+                final int cell = cellOf(id);
+                if (cell >= 0 && mGrid.getDigit(cell) == 0) v.push(-id);
+            }
+        }
+        return v;
+    }
+
+    /***
+     * Disable a selector variable and remove the blocking clauses guarded by
+     * it, after counting solutions. If the solver is {@link #mRuleSolver} and
+     * it has retired {@link #MAX_RETIRED_SELECTORS} selectors, it is discarded,
+     * so that the next use builds a clean one. A solution iterator still open
+     * keeps using the discarded solver until it is closed.
+     *
+     * @param solver
+     *            The SAT solver that the blocking clauses were added to.
+     * @param selector
+     *            The selector variable, or 0 if none was reserved.
+     * @param blockingClauses
+     *            The blocking clauses guarded by the selector.
+     */
+    private void retireSelector(final ISolver solver, final int selector, final List<IConstr> blockingClauses) {
+        for (IConstr c : blockingClauses) {
+            if (c != null) solver.removeConstr(c);
+        }
+        if (selector != 0) {
+            // Fix the selector false, so that the solver never assumes it
+            // true by its own decision.
+            final VecInt v = new VecInt(1);
+            v.push(-selector);
+            try {
+                solver.addClause(v);
+            } catch (ContradictionException e) {
+                // Never happens, since no clause forces the selector true.
+            }
+            if (solver == mRuleSolver && ++mRetiredSelectors >= MAX_RETIRED_SELECTORS) {
+                mRuleSolver = null;
             }
         }
     }
@@ -209,31 +1258,245 @@ public class PuzzleSolver {
      * {@link ISolver#isSatisfiable()} method should have been issued
      * previously.
      *
-     * @return The extracted solution.
+     * @return The extracted solution, including the cells filled before the
+     *         SAT solver was invoked.
      */
     private byte[][] extractSolution() {
         int[] model = mSolver.model();
-        byte[][] solution = new byte[NN][NN];
+        byte[][] solution = mGrid.toArray();
 
         for (int i = 0; i < model.length; i++) {
             final int id = model[i];
             if (id > 0) {
-                final int x = varX(id);
-                final int y = varY(id);
-                final int d = varD(id);
-                solution[y][x] = (byte)d;
+                final int cell = cellOf(id);
+                if (cell >= 0) {
+                    solution[cell / mNN][cell % mNN] = (byte)digitOf(id);
+                }
             }
         }
 
         return solution;
     }
 
-    // Variable encoding/decoding.
+    // Enumerating solutions.
 
     /***
-     * The number of SAT4J variables we need to represent a number place puzzle.
+     * An iterator over the solutions of a puzzle, created by
+     * {@link PuzzleSolver#iterateSolutions(byte[][])}.
+     * <p>
+     * Each solution is searched only when it is requested, by the solver for
+     * the rules of number place with a blocking clause for each solution found
+     * so far. The blocking clauses are guarded by a selector variable, as in
+     * {@link PuzzleSolver#countSolutions(byte[][], int)}, and are removed when
+     * the iteration is over, either by exhausting the solutions or by
+     * {@link #close()}. An iterator abandoned before that should be closed.
+     * <p>
+     * {@link #next(byte[][])} copies a solution into a caller supplied array,
+     * so that walking many solutions needs no array allocation for each.
+     * {@link PuzzleSolver#stop()} stops the search in progress, and the
+     * iteration is over.
      */
-    private static final int MAXVAR = NN * NN * NN + 1; // XXX: Do we really need '+1' here?
+    public final class SolutionIterator implements Iterator<byte[][]> {
+
+        /***
+         * The cells filled before the search, i.e., the givens and the cells
+         * forced by them.
+         */
+        private final byte[][] mBase;
+
+        /***
+         * The assumptions of the filled cells and the selector.
+         */
+        private final VecInt mFilled;
+
+        /***
+         * The selector variable to guard the blocking clauses, or 0 if none.
+         */
+        private int mSelector;
+
+        /***
+         * The SAT solver to search the solutions, or null if the iteration is
+         * over.
+         */
+        private ISolver mRules;
+
+        private final List<IConstr> mBlockingClauses = new ArrayList<IConstr>();
+
+        /***
+         * A work area to build a blocking clause.
+         */
+        private final VecInt mBlocking = new VecInt();
+
+        /***
+         * Whether the next solution has been searched.
+         */
+        private boolean mSearched;
+
+        /***
+         * Whether the next solution exists.
+         */
+        private boolean mFound;
+
+        /***
+         * The model of the next solution, or null if the propagation alone
+         * solved the puzzle.
+         */
+        private int[] mModel;
+
+        private SolutionIterator(final byte[][] puzzle) {
+            mIsStopped = false;
+            final boolean consistent = propagate(puzzle);
+            mBase = mGrid.toArray();
+            mFilled = new VecInt(mNN * mNN + 1);
+
+            mSearched = !consistent || mGrid.isSolved();
+            mFound = consistent;
+            if (mSearched) return;
+
+            try {
+                mRules = prepareRuleSolver();
+            } catch (ContradictionException e) {
+                mSearched = true;
+                mFound = false;
+                return;
+            }
+            for (int y = 0; y < mNN; y++) {
+                for (int x = 0; x < mNN; x++) {
+                    if (mBase[y][x] > 0) mFilled.push(var(x, y, mBase[y][x]));
+                }
+            }
+            mSelector = mRules.nextFreeVarId(true);
+            mFilled.push(mSelector);
+        }
+
+        /***
+         * Tell whether another solution exists. It searches the solution if
+         * not yet, so it may block for some long time.
+         *
+         * @return True if another solution exists.
+         */
+        public boolean hasNext() {
+            synchronized (PuzzleSolver.this) {
+                if (!mSearched) search();
+                return mFound;
+            }
+        }
+
+        /***
+         * Return the next solution in a newly allocated array.
+         *
+         * @return The next solution.
+         * @throws NoSuchElementException
+         *             If no more solution exists.
+         */
+        public byte[][] next() {
+            return next(new byte[mNN][mNN]);
+        }
+
+        /***
+         * Return the next solution in a caller supplied array.
+         *
+         * @param buffer
+         *            A nine by nine (or NN by NN) array to receive the
+         *            solution.
+         * @return The buffer.
+         * @throws NoSuchElementException
+         *             If no more solution exists.
+         */
+        public byte[][] next(final byte[][] buffer) {
+            synchronized (PuzzleSolver.this) {
+                if (!hasNext()) throw new NoSuchElementException();
+
+                for (int y = 0; y < mNN; y++) {
+                    System.arraycopy(mBase[y], 0, buffer[y], 0, mNN);
+                }
+                final int[] model = mModel;
+                if (model != null) {
+                    final int cellVariables = mNN * mNN * mNN;
+                    for (int i = 0; i < model.length; i++) {
+                        final int id = model[i];
+                        if (id > 0 && id <= cellVariables) {
+                            buffer[varY(id)][varX(id)] = (byte)varD(id);
+                        }
+                    }
+                }
+
+                mModel = null;
+                mSearched = mRules == null;
+                mFound = false;
+                return buffer;
+            }
+        }
+
+        /***
+         * Not supported.
+         *
+         * @throws UnsupportedOperationException
+         *             Always.
+         */
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        /***
+         * Finish the iteration, and remove the blocking clauses from the
+         * solver. {@link #hasNext()} returns false after it. It is safe to
+         * close an iterator twice.
+         */
+        public void close() {
+            synchronized (PuzzleSolver.this) {
+                final ISolver solver = mRules;
+                mRules = null;
+                mSearched = true;
+                mFound = false;
+                mModel = null;
+                if (solver != null) {
+                    retireSelector(solver, mSelector, mBlockingClauses);
+                    mBlockingClauses.clear();
+                }
+            }
+        }
+
+        /***
+         * Search the next solution, and exclude it from the following search
+         * by a blocking clause. Only the cells left empty by the propagation
+         * are considered in the blocking clause, since the filled cells are
+         * same in all solutions.
+         */
+        private void search() {
+            final ISolver solver = mRules;
+            mSearched = true;
+            mFound = false;
+            try {
+                mSolver = solver;
+                if (!mIsStopped && solver.isSatisfiable(mFilled)) {
+                    final int[] model = solver.model();
+                    final int cellVariables = mNN * mNN * mNN;
+                    mBlocking.clear();
+                    mBlocking.push(-mSelector);
+                    for (int i = 0; i < model.length; i++) {
+                        final int id = model[i];
+                        if (id > 0 && id <= cellVariables && mBase[varY(id)][varX(id)] == 0) mBlocking.push(-id);
+                    }
+                    mModel = model;
+                    mFound = true;
+                    mBlockingClauses.add(solver.addClause(mBlocking));
+                }
+            } catch (ContradictionException e) {
+                // The blocking clause is never empty, but just in case, the
+                // solution found is the last one.
+                retireSelector(solver, mSelector, mBlockingClauses);
+                mBlockingClauses.clear();
+                mRules = null;
+            } catch (TimeoutException e) {
+            } finally {
+                mSolver = null;
+            }
+            if (!mFound) close();
+        }
+    }
+
+    // Variable encoding/decoding.
 
     /***
      * Find a SAT4J (Dimacs) variable id (number) to represent a digit in a
@@ -241,15 +1504,15 @@ public class PuzzleSolver {
      * y, d) is true.
      *
      * @param x
-     *            A value in range 0..8 to represent X position of a cell.
+     *            A value in range 0..8 (or 0..NN-1) to represent X position of a cell.
      * @param y
-     *            A value in range 0..8 to represent Y position of a cell.
+     *            A value in range 0..8 (or 0..NN-1) to represent Y position of a cell.
      * @param d
-     *            A value in range 1..9 to represent a digit in a cell.
+     *            A value in range 1..9 (or 1..NN) to represent a digit in a cell.
      * @return The variable id.
      */
-    private static int var(int x, int y, int d) {
-        return x * NN + y * NN * NN + d;
+    int var(int x, int y, int d) {
+        return x * mNN + y * mNN * mNN + d;
     }
 
     /***
@@ -259,8 +1522,8 @@ public class PuzzleSolver {
      *            A variable id. This must be a positive value.
      * @return The X position in range 0..8.
      */
-    private static int varX(int id) {
-        return (id - 1) / NN % NN;
+    int varX(int id) {
+        return (id - 1) / mNN % mNN;
     }
 
     /***
@@ -270,8 +1533,8 @@ public class PuzzleSolver {
      *            A variable id. This must be a positive value.
      * @return The Y position in range 0..8.
      */
-    private static int varY(int id) {
-        return (id - 1) / (NN * NN);
+    int varY(int id) {
+        return (id - 1) / (mNN * mNN);
     }
 
     /***
@@ -281,7 +1544,59 @@ public class PuzzleSolver {
      *            A variable id. This must be a positive value.
      * @return The digit in range 1..9.
      */
-    private static int varD(int id) {
-        return (id - 1) % NN + 1;
+    int varD(int id) {
+        return (id - 1) % mNN + 1;
+    }
+
+    /***
+     * Find a variable id to represent a digit in a cell under the current
+     * encoding.
+     *
+     * @param cell
+     *            The cell index.
+     * @param d
+     *            The digit in range 1..9.
+     * @return The variable id, or 0 if no variable represents it.
+     */
+    private int literal(int cell, int d) {
+        if (mEncoding == Encoding.COMPACT) {
+            return mCompactVar[cell * mNN + d - 1];
+        } else {
+            return var(cell % mNN, cell / mNN, d);
+        }
+    }
+
+    /***
+     * Find and return the cell that a variable represents under the current
+     * encoding.
+     *
+     * @param id
+     *            A variable id. This must be a positive value.
+     * @return The cell index, or -1 if the variable doesn't represent a
+     *         digit in a cell (e.g., a selector.)
+     */
+    private int cellOf(int id) {
+        if (id > mCellVariableCount) return -1;
+        if (mEncoding == Encoding.COMPACT) {
+            return mCompactCell[id];
+        } else {
+            return varY(id) * mNN + varX(id);
+        }
+    }
+
+    /***
+     * Find and return the digit that a variable represents under the current
+     * encoding.
+     *
+     * @param id
+     *            A variable id that {@link #cellOf(int)} accepts.
+     * @return The digit in range 1..9.
+     */
+    private int digitOf(int id) {
+        if (mEncoding == Encoding.COMPACT) {
+            return mCompactDigit[id];
+        } else {
+            return varD(id);
+        }
     }
 }
@@ -0,0 +1,234 @@
+package com.gmail.at.sabre.alissa.numberplace.solver;
+
+/***
+ * The result of solving a puzzle by {@link PuzzleSolver}, with the details of
+ * how it went.
+ * <p>
+ * In addition to the solution, it tells why there is no solution if so, how
+ * many cells each stage filled, how long each stage took, and what the SAT
+ * solver did. The time is in
+ * nanoseconds and split into three stages: the propagation of naked and hidden
+ * singles, the encoding (building the SAT instance and the assumptions), and
+ * the search by the SAT solver. The SAT4J statistics are those of this puzzle
+ * only, even if the SAT solver is reused across puzzles. They are all 0 if the
+ * SAT solver was not invoked.
+ *
+ * @author alissa
+ */
+public class SolveResult {
+
+    /***
+     * The outcome of solving a puzzle.
+     */
+    public enum Outcome {
+
+        /***
+         * A solution was found.
+         */
+        SOLVED,
+
+        /***
+         * The puzzle has no solution.
+         */
+        UNSATISFIABLE,
+
+        /***
+         * The solver was stopped by {@link PuzzleSolver#stop()}.
+         */
+        STOPPED,
+
+        /***
+         * The budget ran out before the solver found an answer. See
+         * {@link Budget}.
+         */
+        TIMED_OUT,
+    }
+
+    private final Outcome mOutcome;
+
+    private final byte[][] mSolution;
+
+    private final int mGivenCount;
+
+    private final int mPropagatedCount;
+
+    private final int mSearchedCount;
+
+    private final long mPropagationTime;
+
+    private final long mEncodingTime;
+
+    private final long mSearchTime;
+
+    private final long mDecisions;
+
+    private final long mConflicts;
+
+    private final long mPropagations;
+
+    private final long mLearnedClauses;
+
+    private final long mHeapInUse;
+
+    SolveResult(final Outcome outcome, final byte[][] solution,
+            final int givenCount, final int propagatedCount, final int searchedCount,
+            final long propagationTime, final long encodingTime, final long searchTime,
+            final long decisions, final long conflicts, final long propagations, final long learnedClauses,
+            final long heapInUse) {
+        mOutcome = outcome;
+        mSolution = solution;
+        mGivenCount = givenCount;
+        mPropagatedCount = propagatedCount;
+        mSearchedCount = searchedCount;
+        mPropagationTime = propagationTime;
+        mEncodingTime = encodingTime;
+        mSearchTime = searchTime;
+        mDecisions = decisions;
+        mConflicts = conflicts;
+        mPropagations = propagations;
+        mLearnedClauses = learnedClauses;
+        mHeapInUse = heapInUse;
+    }
+
+    /***
+     * Return the outcome.
+     *
+     * @return The outcome.
+     */
+    public Outcome getOutcome() {
+        return mOutcome;
+    }
+
+    /***
+     * Return the solution.
+     *
+     * @return The solution, or null unless the outcome is
+     *         {@link Outcome#SOLVED}.
+     */
+    public byte[][] getSolution() {
+        return mSolution;
+    }
+
+    /***
+     * Return the number of givens in the puzzle.
+     *
+     * @return The number of cells.
+     */
+    public int getGivenCount() {
+        return mGivenCount;
+    }
+
+    /***
+     * Return the number of cells that the propagation (naked singles and
+     * hidden singles) filled.
+     *
+     * @return The number of cells.
+     */
+    public int getPropagatedCount() {
+        return mPropagatedCount;
+    }
+
+    /***
+     * Return the number of cells that the SAT solver filled. It is 0 if the
+     * SAT solver was not invoked or found no solution.
+     *
+     * @return The number of cells.
+     */
+    public int getSearchedCount() {
+        return mSearchedCount;
+    }
+
+    /***
+     * Return the time spent to fill naked and hidden singles.
+     *
+     * @return The time in nanoseconds.
+     */
+    public long getPropagationTime() {
+        return mPropagationTime;
+    }
+
+    /***
+     * Return the time spent to build the SAT instance and the assumptions.
+     *
+     * @return The time in nanoseconds.
+     */
+    public long getEncodingTime() {
+        return mEncodingTime;
+    }
+
+    /***
+     * Return the time spent by the SAT solver.
+     *
+     * @return The time in nanoseconds.
+     */
+    public long getSearchTime() {
+        return mSearchTime;
+    }
+
+    /***
+     * Return the total time spent to solve the puzzle.
+     *
+     * @return The time in nanoseconds.
+     */
+    public long getTotalTime() {
+        return mPropagationTime + mEncodingTime + mSearchTime;
+    }
+
+    /***
+     * Return the number of decisions the SAT solver made.
+     *
+     * @return The number of decisions.
+     */
+    public long getDecisions() {
+        return mDecisions;
+    }
+
+    /***
+     * Return the number of conflicts the SAT solver met.
+     *
+     * @return The number of conflicts.
+     */
+    public long getConflicts() {
+        return mConflicts;
+    }
+
+    /***
+     * Return the number of literals the SAT solver propagated.
+     *
+     * @return The number of propagations.
+     */
+    public long getPropagations() {
+        return mPropagations;
+    }
+
+    /***
+     * Return the number of clauses the SAT solver learned.
+     *
+     * @return The number of learned clauses.
+     */
+    public long getLearnedClauses() {
+        return mLearnedClauses;
+    }
+
+    /***
+     * Return the Java heap in use when the search ended, i.e.,
+     * {@link Runtime#totalMemory()} minus {@link Runtime#freeMemory()}. It is
+     * a snapshot of the whole process, not the memory used by this puzzle: it
+     * includes the data of other threads and any garbage not collected yet,
+     * and it misses what was collected during the search. It is only useful
+     * to watch the trend over many puzzles.
+     *
+     * @return The heap in use in bytes.
+     */
+    public long getHeapInUse() {
+        return mHeapInUse;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "%s given=%d propagated=%d searched=%d propagation=%dus encoding=%dus search=%dus decisions=%d conflicts=%d propagations=%d learned=%d heap=%dKB",
+                mOutcome, mGivenCount, mPropagatedCount, mSearchedCount, mPropagationTime / 1000, mEncodingTime / 1000, mSearchTime / 1000,
+                mDecisions, mConflicts, mPropagations, mLearnedClauses, mHeapInUse / 1024);
+    }
+}
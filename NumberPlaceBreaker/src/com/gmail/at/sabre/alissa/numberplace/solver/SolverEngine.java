@@ -0,0 +1,62 @@
+package com.gmail.at.sabre.alissa.numberplace.solver;
+
+/***
+ * A common interface of number place puzzle solvers.
+ * <p>
+ * A puzzle and a solution are represented by a nine by nine array of bytes,
+ * where puzzle[y][x] holds the digit in the cell at x'th column of y'th row.
+ * A digit is in range 1..9, and 0 represents an empty cell.
+ * (An engine that supports larger puzzles, e.g., {@link PuzzleSolver} created
+ * with a block size of 4, takes a 16 by 16 array and digits in range 1..16.)
+ * <p>
+ * An implementation may block for some long time to solve a puzzle, so
+ * {@link #solve(byte[][])} is usually invoked by a worker thread, and
+ * {@link #stop()} by another (e.g., UI) thread.
+ *
+ * @author alissa
+ */
+public interface SolverEngine {
+
+    /***
+     * Solve a number place puzzle. This method may block for some long time.
+     * UI thread should not invoke it.
+     *
+     * @param puzzle
+     *            The puzzle to solve.
+     * @return A solution, or null if no solution was found.
+     */
+    public byte[][] solve(byte[][] puzzle);
+
+    /***
+     * Count the solutions of a number place puzzle, up to a limit. The search
+     * stops as soon as the limit is reached, so
+     * {@code countSolutions(puzzle, 2) == 1} tells whether the puzzle has a
+     * unique solution at about the cost of one extra search. This method may
+     * block for some long time, too.
+     *
+     * @param puzzle
+     *            The puzzle.
+     * @param limit
+     *            The maximum number of solutions to count.
+     * @return The number of solutions, which is no more than limit.
+     */
+    public int countSolutions(byte[][] puzzle, int limit);
+
+    /***
+     * Stop solving the puzzle. This method is intended to be invoked by a
+     * thread when another thread is executing {@link #solve(byte[][])}. The
+     * execution in the other thread soon stops and the method
+     * {@link #solve(byte[][])} returns null. (Or,
+     * {@link #countSolutions(byte[][], int)} returns the number of solutions
+     * found so far.) This method itself returns very soon.
+     */
+    public void stop();
+
+    /***
+     * Indicates whether the recent invocation of {@link #solve(byte[][])} has
+     * stopped by {@link #stop()}.
+     *
+     * @return true if stopped.
+     */
+    public boolean isStopped();
+}
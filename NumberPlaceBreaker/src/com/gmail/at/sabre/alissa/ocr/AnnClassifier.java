@@ -26,6 +26,22 @@ public class AnnClassifier extends ClassifierBase {
 
     @Override
     public int classify(byte[] feature) {
+        return classify(feature, null);
+    }
+
+    /***
+     * Classify a feature vector and score each class. The score of a class is
+     * the output of its neuron, that is trained to be 1 for the class and 0
+     * for others, clipped to 0..1.
+     *
+     * @param feature
+     *            a feature vector.
+     * @param scores
+     *            an array to receive the scores, or null.
+     * @return the result of classification.
+     */
+    @Override
+    public int classify(byte[] feature, float[] scores) {
         final Mat featureMat = OpenCVUtils.matFromFeatures(feature);
         final Mat resultsMat = new Mat();
         mAnn.predict(featureMat, resultsMat);
@@ -41,6 +57,12 @@ public class AnnClassifier extends ClassifierBase {
             }
         }
 
+        if (scores != null) {
+            for (int i = 0; i < scores.length; i++) {
+                scores[i] = i < results.length ? Math.max(0f, Math.min(1f, results[i])) : 0f;
+            }
+        }
+
         featureMat.release();
         resultsMat.release();
 
@@ -37,6 +37,23 @@ public interface Classifier {
      */
     public int classify(byte[] feature);
 
+    /***
+     * Classify a feature vector and also score how likely it is of each class.
+     * The scores tell the alternatives of the classification, e.g., when the
+     * result is not a confident one.
+     *
+     * @param feature
+     *            a feature vector.
+     * @param scores
+     *            an array to receive the scores indexed by class id, or null if
+     *            not needed. A score is in range 0..1, and a higher score means
+     *            more likely. A class id that doesn't fit in the array is not
+     *            scored.
+     * @return the result of classification (class id), same as
+     *         {@link #classify(byte[])}.
+     */
+    public int classify(byte[] feature, float[] scores);
+
     /***
      * Load the classifier's internal states from the specified InputStream. The
      * content of the InputStream should be what was previously created by the
@@ -20,6 +20,27 @@ public abstract class ClassifierBase implements Classifier {
 
     public abstract int classify(byte[] feature);
 
+    /***
+     * Classify a feature vector and score each class. The default
+     * implementation in {@link ClassifierBase} has no idea of alternatives; it
+     * gives the score 1 to the result of {@link #classify(byte[])} and 0 to
+     * any other class.
+     *
+     * @param feature
+     *            a feature vector.
+     * @param scores
+     *            an array to receive the scores, or null.
+     * @return the result of classification.
+     */
+    public int classify(byte[] feature, float[] scores) {
+        final int c = classify(feature);
+        if (scores != null) {
+            for (int i = 0; i < scores.length; i++) scores[i] = 0f;
+            if (c < scores.length) scores[c] = 1f;
+        }
+        return c;
+    }
+
     /***
      * The prefix of a temporary filenames, used by
      * {@link File#createTempFile(String, String, File)}. {@link ClassifierBase}
@@ -35,6 +35,12 @@ public class KnnClassifier extends ClassifierBase {
      */
     protected int mK = 1;
 
+    /***
+     * The number of neighbours to consider when scoring classes by
+     * {@link #classify(byte[], float[])}, if it is larger than {@link #mK}.
+     */
+    protected static final int SCORE_NEIGHBOURS = 16;
+
     private CvKNearest mEngine = new CvKNearest();
 
     @Override
@@ -58,6 +64,69 @@ public class KnnClassifier extends ClassifierBase {
         return result;
     }
 
+    /***
+     * Classify a feature vector and score each class. The score of a class is
+     * the distance to the nearest neighbour divided by the distance to the
+     * nearest one of the class (both plus one), so the class of the nearest
+     * neighbour scores 1, and a class none of whose samples is near scores 0.
+     * <p>
+     * The result of classification is the majority of the nearest {@link #mK}
+     * neighbours, the nearer winning a tie, that is usually same as
+     * {@link #classify(byte[])}.
+     *
+     * @param feature
+     *            a feature vector.
+     * @param scores
+     *            an array to receive the scores, or null.
+     * @return the result of classification.
+     */
+    @Override
+    public int classify(byte[] feature, float[] scores) {
+        if (scores == null) return classify(feature);
+
+        final int k = Math.max(mK, SCORE_NEIGHBOURS);
+        final Mat featureMat = OpenCVUtils.matFromFeatures(feature);
+        final Mat resultsMat = new Mat();
+        final Mat responsesMat = new Mat();
+        final Mat distancesMat = new Mat();
+
+        mEngine.find_nearest(featureMat, k, resultsMat, responsesMat, distancesMat);
+
+        final float[] responses = new float[k];
+        final float[] distances = new float[k];
+        responsesMat.get(0, 0, responses);
+        distancesMat.get(0, 0, distances);
+
+        featureMat.release();
+        resultsMat.release();
+        responsesMat.release();
+        distancesMat.release();
+
+        // The neighbours are sorted by distance, that is a squared one.
+        for (int i = 0; i < scores.length; i++) scores[i] = 0f;
+        final double nearest = Math.sqrt(distances[0]) + 1;
+        for (int i = 0; i < k; i++) {
+            final int c = (int)responses[i];
+            if (c >= 0 && c < scores.length && scores[c] == 0f) {
+                scores[c] = (float)(nearest / (Math.sqrt(distances[i]) + 1));
+            }
+        }
+
+        int result = (int)responses[0];
+        int votes = 0;
+        for (int i = 0; i < mK; i++) {
+            int n = 0;
+            for (int j = 0; j < mK; j++) {
+                if (responses[j] == responses[i]) n++;
+            }
+            if (n > votes) {
+                votes = n;
+                result = (int)responses[i];
+            }
+        }
+        return result;
+    }
+
     /***
      * Load internal states from an InputStream.
      *
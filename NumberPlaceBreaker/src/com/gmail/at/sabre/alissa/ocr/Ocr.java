@@ -120,6 +120,31 @@ public class Ocr {
         return mDecoder[mClassifier.classify(getFeature(image))];
     }
 
+    /***
+     * Recognize an image and also score how likely it is of each possible
+     * string. See {@link Classifier#classify(byte[], float[])} for the
+     * scores.
+     *
+     * @param image
+     *            A CV_8UC1 binary (or high contrast gray scale) image
+     *            containing and being fit to a digit.
+     * @param scores
+     *            A map to receive the scores of the strings. Strings that
+     *            score 0 are not put.
+     * @return The recognized string, same as {@link #recognize(Mat)}.
+     */
+    public String recognize(Mat image, Map<String, Float> scores) {
+        final Callback callback = mCallback;
+        if (callback != null) callback.onRecognize(image);
+
+        final float[] s = new float[mDecoder.length];
+        final int c = mClassifier.classify(getFeature(image), s);
+        for (int i = 0; i < s.length; i++) {
+            if (s[i] > 0f) scores.put(mDecoder[i], s[i]);
+        }
+        return mDecoder[c];
+    }
+
     /***
      * Return a feature vector for a specified image.
      *
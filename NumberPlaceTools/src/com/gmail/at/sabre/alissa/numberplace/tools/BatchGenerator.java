@@ -0,0 +1,89 @@
+package com.gmail.at.sabre.alissa.numberplace.tools;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import com.gmail.at.sabre.alissa.numberplace.solver.PuzzleGenerator;
+
+/***
+ * A command line tool to generate a pack of puzzles, without Android.
+ * <p>
+ * It writes the puzzles generated by {@link PuzzleGenerator} to the standard
+ * output in the one-line format (see {@link PuzzleFormat}), one line for each
+ * puzzle. Every puzzle has a unique solution and is minimal. A same seed always
+ * gives a same pack, regardless of the number of threads.
+ * <p>
+ * Usage: BatchGenerator [-n count] [-s seed] [-t threads] [-a attempts] [-v]
+ * <dl>
+ * <dt>-n count</dt>
+ * <dd>The number of puzzles. The default is 1.</dd>
+ * <dt>-s seed</dt>
+ * <dd>The seed. The default is 0.</dd>
+ * <dt>-t threads</dt>
+ * <dd>The number of worker threads. The default is the number of processors.</dd>
+ * <dt>-a attempts</dt>
+ * <dd>The number of minimisation attempts for each puzzle. The default is
+ * {@link PuzzleGenerator#DEFAULT_ATTEMPTS}.</dd>
+ * <dt>-v</dt>
+ * <dd>Write the solution after each puzzle, separated by a space.</dd>
+ * </dl>
+ *
+ * @author alissa
+ */
+public class BatchGenerator {
+
+    public static void main(final String[] args) {
+        int count = 1;
+        long seed = 0;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int attempts = PuzzleGenerator.DEFAULT_ATTEMPTS;
+        boolean verbose = false;
+        try {
+            int i = 0;
+            while (i < args.length) {
+                final String arg = args[i++];
+                if (arg.equals("-n") && i < args.length) {
+                    count = Integer.parseInt(args[i++]);
+                    if (count < 0) throw new IllegalArgumentException("count must not be negative");
+                } else if (arg.equals("-s") && i < args.length) {
+                    seed = Long.parseLong(args[i++]);
+                } else if (arg.equals("-t") && i < args.length) {
+                    threads = Integer.parseInt(args[i++]);
+                } else if (arg.equals("-a") && i < args.length) {
+                    attempts = Integer.parseInt(args[i++]);
+                } else if (arg.equals("-v")) {
+                    verbose = true;
+                } else {
+                    throw new IllegalArgumentException("Unknown option " + arg);
+                }
+            }
+
+            final PuzzleGenerator generator = new PuzzleGenerator(3, seed, threads);
+            generator.setAttempts(attempts);
+            try {
+                final Writer out = new BufferedWriter(new OutputStreamWriter(System.out, "US-ASCII"));
+                for (int k = 0; k < count; k++) {
+                    out.write(PuzzleFormat.format(generator.generate()));
+                    if (verbose) {
+                        out.write(' ');
+                        out.write(PuzzleFormat.format(generator.getSolution()));
+                    }
+                    out.write('\n');
+                }
+                out.flush();
+            } finally {
+                generator.shutdown();
+            }
+
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: BatchGenerator [-n count] [-s seed] [-t threads] [-a attempts] [-v]");
+            System.exit(2);
+        } catch (IOException e) {
+            System.err.println(e);
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.gmail.at.sabre.alissa.numberplace.tools;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import com.gmail.at.sabre.alissa.numberplace.solver.DifficultyRater;
+import com.gmail.at.sabre.alissa.numberplace.solver.DifficultyRater.Technique;
+
+/***
+ * A command line tool to rate the difficulty of many puzzles at once, without
+ * Android.
+ * <p>
+ * It reads puzzles in the one-line format (see {@link PuzzleFormat}) from a
+ * file or the standard input, rates them by {@link DifficultyRater}, and
+ * writes the ratings to the standard output in the same order as the input,
+ * one line for each puzzle. A line has the rating, followed by "+" if the
+ * techniques were not enough to solve the puzzle, and the techniques applied
+ * with the numbers of the steps, e.g., "2.6 HIDDEN_SINGLE*48
+ * LOCKED_CANDIDATES*2". A malformed line is reported as "error: " followed by
+ * the reason. The total number of steps and time of each technique are
+ * written to the standard error at the end.
+ * <p>
+ * Usage: BatchRater [file]
+ * <dl>
+ * <dt>file</dt>
+ * <dd>The input file. The standard input is read if omitted or "-".</dd>
+ * </dl>
+ *
+ * @author alissa
+ */
+public class BatchRater {
+
+    public static void main(final String[] args) {
+        String file = "-";
+        try {
+            if (args.length > 1) throw new IllegalArgumentException("Too many arguments");
+            if (args.length == 1) {
+                if (args[0].startsWith("-") && args[0].length() > 1) throw new IllegalArgumentException("Unknown option " + args[0]);
+                file = args[0];
+            }
+
+            final DifficultyRater rater = new DifficultyRater();
+            final Technique[] techniques = Technique.values();
+            final long[] steps = new long[techniques.length];
+            final long[] times = new long[techniques.length];
+            int count = 0;
+            int solved = 0;
+
+            final InputStream in = file.equals("-") ? System.in : new FileInputStream(file);
+            try {
+                final BufferedReader reader = new BufferedReader(new InputStreamReader(in, "US-ASCII"));
+                final Writer out = new BufferedWriter(new OutputStreamWriter(System.out, "US-ASCII"));
+                final long start = System.nanoTime();
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (PuzzleFormat.isBlank(line)) continue;
+                    final DifficultyRater.Rating rating;
+                    try {
+                        rating = rater.rate(PuzzleFormat.parse(line));
+                    } catch (IllegalArgumentException e) {
+                        out.write("error: " + e.getMessage());
+                        out.write('\n');
+                        continue;
+                    }
+                    out.write(rating.toString());
+                    out.write('\n');
+                    count++;
+                    if (rating.isSolved()) solved++;
+                    for (Technique t : techniques) {
+                        steps[t.ordinal()] += rating.getCount(t);
+                        times[t.ordinal()] += rating.getTime(t);
+                    }
+                }
+                out.flush();
+
+                final double elapsed = (System.nanoTime() - start) / 1e9;
+                System.err.println(String.format("%d puzzles in %.3f s: %.1f puzzles/s, %d solved",
+                        count, elapsed, count / elapsed, solved));
+                for (Technique t : techniques) {
+                    System.err.println(String.format("%-18s %8d steps %10.3f ms",
+                            t, steps[t.ordinal()], times[t.ordinal()] / 1e6));
+                }
+            } finally {
+                in.close();
+            }
+
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: BatchRater [file]");
+            System.exit(2);
+        } catch (IOException e) {
+            System.err.println(e);
+            System.exit(1);
+        }
+    }
+}
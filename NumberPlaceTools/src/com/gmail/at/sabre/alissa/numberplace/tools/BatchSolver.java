@@ -0,0 +1,307 @@
+package com.gmail.at.sabre.alissa.numberplace.tools;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.gmail.at.sabre.alissa.numberplace.solver.BitboardSolver;
+import com.gmail.at.sabre.alissa.numberplace.solver.DancingLinksSolver;
+import com.gmail.at.sabre.alissa.numberplace.solver.PortfolioSolver;
+import com.gmail.at.sabre.alissa.numberplace.solver.PuzzleSolver;
+import com.gmail.at.sabre.alissa.numberplace.solver.SolverEngine;
+
+/***
+ * A command line tool to solve many puzzles at once, without Android.
+ * <p>
+ * It reads puzzles in the one-line format (see {@link PuzzleFormat}) from a
+ * file or the standard input, solves them on a pool of worker threads, and
+ * writes the solutions to the standard output in the same order as the input,
+ * one line for each puzzle. A puzzle with no solution is reported as
+ * "unsolvable", and a malformed line as "error: " followed by the reason.
+ * Statistics (throughput and latency percentiles) are written to the
+ * standard error at the end.
+ * <p>
+ * Usage: BatchSolver [-t threads] [-e engine] [file]
+ * <dl>
+ * <dt>-t threads</dt>
+ * <dd>The number of worker threads. The default is the number of processors.</dd>
+ * <dt>-e engine</dt>
+ * <dd>The solver engine, one of "bitboard" (the default), "dlx", "sat",
+ * "sat-compact", and "portfolio" (several SAT solver configurations racing
+ * for each puzzle.)</dd>
+ * <dt>file</dt>
+ * <dd>The input file. The standard input is read if omitted or "-".</dd>
+ * </dl>
+ *
+ * @author alissa
+ */
+public class BatchSolver {
+
+    /***
+     * The number of puzzles per worker that may be queued ahead of the output.
+     * It bounds the memory usage on a huge input.
+     */
+    private static final int QUEUE_PER_THREAD = 64;
+
+    /***
+     * A result of solving one puzzle.
+     */
+    private static class Result {
+
+        /***
+         * The line to output.
+         */
+        public final String mLine;
+
+        /***
+         * The time to solve the puzzle, in nanoseconds.
+         */
+        public final long mNanos;
+
+        public Result(final String line, final long nanos) {
+            mLine = line;
+            mNanos = nanos;
+        }
+    }
+
+    private final int mThreads;
+
+    private final String mEngine;
+
+    /***
+     * The solver engine of each worker thread. An engine is not shared among
+     * threads.
+     */
+    private final ThreadLocal<SolverEngine> mSolvers = new ThreadLocal<SolverEngine>() {
+        @Override
+        protected SolverEngine initialValue() {
+            return newSolverEngine(mEngine);
+        }
+    };
+
+    /***
+     * The latency of each puzzle, in nanoseconds, in the input order.
+     */
+    private long[] mLatencies = new long[1024];
+
+    private int mCount;
+
+    /***
+     * Create a batch solver.
+     *
+     * @param threads
+     *            The number of worker threads.
+     * @param engine
+     *            The name of the solver engine.
+     * @throws IllegalArgumentException
+     *             If the engine name is unknown.
+     */
+    public BatchSolver(final int threads, final String engine) {
+        newSolverEngine(engine); // Validate the name early.
+        mThreads = threads;
+        mEngine = engine;
+    }
+
+    public static void main(final String[] args) {
+        int threads = Runtime.getRuntime().availableProcessors();
+        String engine = "bitboard";
+        String file = "-";
+        try {
+            int i = 0;
+            while (i < args.length) {
+                final String arg = args[i++];
+                if (arg.equals("-t") && i < args.length) {
+                    threads = Integer.parseInt(args[i++]);
+                    if (threads < 1) throw new IllegalArgumentException("threads must be positive");
+                } else if (arg.equals("-e") && i < args.length) {
+                    engine = args[i++];
+                } else if (arg.startsWith("-") && arg.length() > 1) {
+                    throw new IllegalArgumentException("Unknown option " + arg);
+                } else if (i == args.length) {
+                    file = arg;
+                } else {
+                    throw new IllegalArgumentException("Too many arguments");
+                }
+            }
+
+            final BatchSolver batch = new BatchSolver(threads, engine);
+            final InputStream in = file.equals("-") ? System.in : new FileInputStream(file);
+            try {
+                final Writer out = new BufferedWriter(new OutputStreamWriter(System.out, "US-ASCII"));
+                final long start = System.nanoTime();
+                batch.run(new BufferedReader(new InputStreamReader(in, "US-ASCII")), out);
+                out.flush();
+                batch.printStatistics(System.nanoTime() - start);
+            } finally {
+                in.close();
+            }
+
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: BatchSolver [-t threads] [-e bitboard|dlx|sat|sat-compact|portfolio] [file]");
+            System.exit(2);
+        } catch (IOException e) {
+            System.err.println(e);
+            System.exit(1);
+        }
+    }
+
+    /***
+     * Create a solver engine.
+     *
+     * @param name
+     *            The name of the engine.
+     * @return The solver engine.
+     * @throws IllegalArgumentException
+     *             If the name is unknown.
+     */
+    static SolverEngine newSolverEngine(final String name) {
+        if (name.equals("bitboard")) {
+            return new BitboardSolver();
+        } else if (name.equals("dlx")) {
+            return new DancingLinksSolver();
+        } else if (name.equals("sat")) {
+            return new PuzzleSolver();
+        } else if (name.equals("sat-compact")) {
+            final PuzzleSolver solver = new PuzzleSolver();
+            solver.setEncoding(PuzzleSolver.Encoding.COMPACT);
+            return solver;
+        } else if (name.equals("portfolio")) {
+            return PortfolioSolver.ofConfigurations(null, "Glucose", "MiniSATHeap");
+        } else {
+            throw new IllegalArgumentException("Unknown engine " + name);
+        }
+    }
+
+    /***
+     * Solve all puzzles from a reader and write the results to a writer in
+     * the input order.
+     *
+     * @param in
+     *            The reader to read puzzles from.
+     * @param out
+     *            The writer to write results to.
+     * @throws IOException
+     *             If reading or writing failed.
+     */
+    public void run(final BufferedReader in, final Writer out) throws IOException {
+        final ExecutorService executor = Executors.newFixedThreadPool(mThreads);
+        try {
+            final int window = mThreads * QUEUE_PER_THREAD;
+            final Queue<Future<Result>> pending = new ArrayDeque<Future<Result>>(window);
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (PuzzleFormat.isBlank(line)) continue;
+                if (pending.size() >= window) {
+                    write(pending.remove(), out);
+                }
+                pending.add(executor.submit(newTask(line)));
+            }
+            while (!pending.isEmpty()) {
+                write(pending.remove(), out);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /***
+     * Create a task to solve a puzzle.
+     *
+     * @param line
+     *            The puzzle in the one-line format.
+     * @return The task.
+     */
+    private Callable<Result> newTask(final String line) {
+        return new Callable<Result>() {
+            public Result call() {
+                final long start = System.nanoTime();
+                String output;
+                try {
+                    final byte[][] solution = mSolvers.get().solve(PuzzleFormat.parse(line));
+                    output = solution == null ? "unsolvable" : PuzzleFormat.format(solution);
+                } catch (IllegalArgumentException e) {
+                    output = "error: " + e.getMessage();
+                }
+                return new Result(output, System.nanoTime() - start);
+            }
+        };
+    }
+
+    /***
+     * Wait for a result and write it.
+     *
+     * @param future
+     *            The future of the result.
+     * @param out
+     *            The writer.
+     * @throws IOException
+     *             If writing failed.
+     */
+    private void write(final Future<Result> future, final Writer out) throws IOException {
+        final Result result;
+        try {
+            result = future.get();
+        } catch (InterruptedException e) {
+            throw new IOException("Interrupted", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+        out.write(result.mLine);
+        out.write('\n');
+
+        if (mCount == mLatencies.length) {
+            mLatencies = Arrays.copyOf(mLatencies, mCount * 2);
+        }
+        mLatencies[mCount++] = result.mNanos;
+    }
+
+    /***
+     * Print the throughput and the latency percentiles to the standard error.
+     *
+     * @param elapsed
+     *            The elapsed (wall clock) time of the whole run, in
+     *            nanoseconds.
+     */
+    public void printStatistics(final long elapsed) {
+        final long[] latencies = Arrays.copyOf(mLatencies, mCount);
+        Arrays.sort(latencies);
+        System.err.println(String.format("%d puzzles in %.3f s by %d threads (%s): %.1f puzzles/s",
+                mCount, elapsed / 1e9, mThreads, mEngine, mCount / (elapsed / 1e9)));
+        if (mCount > 0) {
+            System.err.println(String.format("latency (us): p50 %.1f, p90 %.1f, p99 %.1f, p99.9 %.1f, max %.1f",
+                    percentile(latencies, 50.0) / 1e3,
+                    percentile(latencies, 90.0) / 1e3,
+                    percentile(latencies, 99.0) / 1e3,
+                    percentile(latencies, 99.9) / 1e3,
+                    latencies[mCount - 1] / 1e3));
+        }
+    }
+
+    /***
+     * Return a percentile of sorted values, by the nearest rank method.
+     *
+     * @param sorted
+     *            The values sorted in ascending order. It must not be empty.
+     * @param p
+     *            The percentile in range 0..100.
+     * @return The value.
+     */
+    private static long percentile(final long[] sorted, final double p) {
+        final int rank = (int)Math.ceil(p / 100.0 * sorted.length);
+        return sorted[Math.max(rank, 1) - 1];
+    }
+}
@@ -0,0 +1,330 @@
+package com.gmail.at.sabre.alissa.numberplace.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.gmail.at.sabre.alissa.numberplace.solver.SolverEngine;
+
+/***
+ * A command line tool to solve a huge number of puzzles in a binary store
+ * (see {@link PuzzleStore}), without Android.
+ * <p>
+ * The records are divided into chunks of a fixed number of records, and the
+ * chunks are solved on a pool of worker threads. A worker maps the input and
+ * output ranges of its chunk with {@link FileChannel#map}, reads each puzzle
+ * from the mapped input into an array of its own, and writes the solution
+ * into the same position of the output store, i.e., the n'th record of the
+ * output is the solution of the n'th puzzle. No puzzle goes through text or
+ * the heap as a whole.
+ * <p>
+ * The progress is recorded in a file named after the output with
+ * ".progress" appended, that has a small header and a byte for each chunk.
+ * The byte of a chunk is set only after the chunk's solutions are forced to
+ * the storage, so if a run is stopped in any way, running it again with the
+ * same input, output and chunk size skips the chunks already done. The
+ * progress file is removed when all chunks are done.
+ * <p>
+ * Usage: BulkSolver [-t threads] [-e engine] [-c chunk] input output
+ * <dl>
+ * <dt>-t threads</dt>
+ * <dd>The number of worker threads. The default is the number of processors.</dd>
+ * <dt>-e engine</dt>
+ * <dd>The solver engine, as in {@link BatchSolver}. The default is
+ * "bitboard".</dd>
+ * <dt>-c chunk</dt>
+ * <dd>The number of records in a chunk. The default is
+ * {@link #DEFAULT_CHUNK}.</dd>
+ * <dt>input</dt>
+ * <dd>The store of puzzles.</dd>
+ * <dt>output</dt>
+ * <dd>The store of solutions. It is created if it doesn't exist.</dd>
+ * </dl>
+ *
+ * @author alissa
+ */
+public class BulkSolver {
+
+    /***
+     * The default number of records in a chunk. A chunk is the unit of both
+     * the work distribution and the progress, so a crash loses at most this
+     * many solutions for each thread.
+     */
+    public static final int DEFAULT_CHUNK = 4096;
+
+    /***
+     * The magic number at the top of a progress file.
+     */
+    private static final int MAGIC = 0x4E50424B; // "NPBK"
+
+    /***
+     * The size of the header of a progress file, i.e., the magic number, the
+     * chunk size, and the number of records.
+     */
+    private static final int HEADER = 4 + 4 + 8;
+
+    private final int mThreads;
+
+    private final String mEngine;
+
+    private final int mChunk;
+
+    /***
+     * The solver engine of each worker thread.
+     */
+    private final ThreadLocal<SolverEngine> mSolvers = new ThreadLocal<SolverEngine>() {
+        @Override
+        protected SolverEngine initialValue() {
+            return BatchSolver.newSolverEngine(mEngine);
+        }
+    };
+
+    /***
+     * The array of each worker thread to read a puzzle into. It is reused for
+     * all puzzles.
+     */
+    private final ThreadLocal<byte[][]> mPuzzles = new ThreadLocal<byte[][]>() {
+        @Override
+        protected byte[][] initialValue() {
+            return new byte[9][9];
+        }
+    };
+
+    private final AtomicLong mSolved = new AtomicLong();
+
+    private final AtomicLong mUnsolvable = new AtomicLong();
+
+    private final AtomicLong mMalformed = new AtomicLong();
+
+    private long mSkipped;
+
+    /***
+     * Create a bulk solver.
+     *
+     * @param threads
+     *            The number of worker threads.
+     * @param engine
+     *            The name of the solver engine.
+     * @param chunk
+     *            The number of records in a chunk.
+     * @throws IllegalArgumentException
+     *             If the engine name is unknown.
+     */
+    public BulkSolver(final int threads, final String engine, final int chunk) {
+        BatchSolver.newSolverEngine(engine); // Validate the name early.
+        mThreads = threads;
+        mEngine = engine;
+        mChunk = chunk;
+    }
+
+    public static void main(final String[] args) {
+        int threads = Runtime.getRuntime().availableProcessors();
+        String engine = "bitboard";
+        int chunk = DEFAULT_CHUNK;
+        final List<String> files = new ArrayList<String>();
+        try {
+            int i = 0;
+            while (i < args.length) {
+                final String arg = args[i++];
+                if (arg.equals("-t") && i < args.length) {
+                    threads = Integer.parseInt(args[i++]);
+                    if (threads < 1) throw new IllegalArgumentException("threads must be positive");
+                } else if (arg.equals("-e") && i < args.length) {
+                    engine = args[i++];
+                } else if (arg.equals("-c") && i < args.length) {
+                    chunk = Integer.parseInt(args[i++]);
+                    if (chunk < 1 || chunk > Integer.MAX_VALUE / PuzzleStore.RECORD) throw new IllegalArgumentException("chunk is out of range");
+                } else if (arg.startsWith("-")) {
+                    throw new IllegalArgumentException("Unknown option " + arg);
+                } else {
+                    files.add(arg);
+                }
+            }
+            if (files.size() != 2) throw new IllegalArgumentException("Both input and output are required");
+
+            final BulkSolver bulk = new BulkSolver(threads, engine, chunk);
+            final long start = System.nanoTime();
+            final long count = bulk.run(new File(files.get(0)), new File(files.get(1)));
+            bulk.printStatistics(count, System.nanoTime() - start);
+
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: BulkSolver [-t threads] [-e bitboard|dlx|sat|sat-compact|portfolio] [-c chunk] input output");
+            System.exit(2);
+        } catch (IOException e) {
+            System.err.println(e);
+            System.exit(1);
+        }
+    }
+
+    /***
+     * Solve all puzzles in a store, or those not solved yet by a previous run.
+     *
+     * @param input
+     *            The store of puzzles.
+     * @param output
+     *            The store of solutions.
+     * @return The number of records in the store.
+     * @throws IOException
+     *             If reading or writing failed.
+     * @throws IllegalArgumentException
+     *             If the input is not a store, or the progress file is of
+     *             another run.
+     */
+    public long run(final File input, final File output) throws IOException {
+        final File marker = new File(output.getPath() + ".progress");
+        final RandomAccessFile in = new RandomAccessFile(input, "r");
+        try {
+            final long records = PuzzleStore.countRecords(in.length());
+            final int chunks = (int)((records + mChunk - 1) / mChunk);
+            final boolean resume = marker.exists();
+            final RandomAccessFile out = new RandomAccessFile(output, "rw");
+            try {
+                if (resume && out.length() != records * PuzzleStore.RECORD) {
+                    throw new IllegalArgumentException(String.format("%s doesn't match %s; remove it to start over", marker, output));
+                }
+                out.setLength(records * PuzzleStore.RECORD);
+                final RandomAccessFile progress = new RandomAccessFile(marker, "rw");
+                try {
+                    final MappedByteBuffer done = progress.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, HEADER + chunks);
+                    if (resume) {
+                        if (done.getInt(0) != MAGIC || done.getInt(4) != mChunk || done.getLong(8) != records) {
+                            throw new IllegalArgumentException(String.format("%s doesn't match %s; remove it to start over", marker, output));
+                        }
+                    } else {
+                        done.putInt(0, MAGIC);
+                        done.putInt(4, mChunk);
+                        done.putLong(8, records);
+                        done.force();
+                    }
+                    solveChunks(in.getChannel(), out.getChannel(), done, records, chunks);
+                } finally {
+                    progress.close();
+                }
+            } finally {
+                out.close();
+            }
+            marker.delete();
+            return records;
+        } finally {
+            in.close();
+        }
+    }
+
+    /***
+     * Solve the chunks not marked as done, on the worker threads.
+     */
+    private void solveChunks(final FileChannel in, final FileChannel out, final MappedByteBuffer done,
+            final long records, final int chunks) throws IOException {
+        final ExecutorService executor = Executors.newFixedThreadPool(mThreads);
+        try {
+            final List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for (int c = 0; c < chunks; c++) {
+                if (done.get(HEADER + c) != 0) {
+                    mSkipped++;
+                    continue;
+                }
+                final int chunk = c;
+                final long first = (long)c * mChunk;
+                final int n = (int)Math.min(mChunk, records - first);
+                futures.add(executor.submit(new Callable<Void>() {
+                    public Void call() throws IOException {
+                        solveChunk(in, out, first, n);
+                        synchronized (done) {
+                            done.put(HEADER + chunk, (byte)1);
+                            done.force();
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    throw new IOException("Interrupted", e);
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException) throw (IOException)e.getCause();
+                    throw new RuntimeException(e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /***
+     * Solve the puzzles in a range of records and force the solutions to the
+     * storage.
+     *
+     * @param in
+     *            The channel of the input store.
+     * @param out
+     *            The channel of the output store.
+     * @param first
+     *            The index of the first record.
+     * @param n
+     *            The number of records.
+     * @throws IOException
+     *             If mapping failed.
+     */
+    private void solveChunk(final FileChannel in, final FileChannel out, final long first, final int n) throws IOException {
+        final long position = first * PuzzleStore.RECORD;
+        final int size = n * PuzzleStore.RECORD;
+        final MappedByteBuffer src = in.map(FileChannel.MapMode.READ_ONLY, position, size);
+        final MappedByteBuffer dst = out.map(FileChannel.MapMode.READ_WRITE, position, size);
+        final SolverEngine solver = mSolvers.get();
+        final byte[][] puzzle = mPuzzles.get();
+        for (int offset = 0; offset < size; offset += PuzzleStore.RECORD) {
+            if (src.get(offset) == PuzzleStore.MALFORMED) {
+                PuzzleStore.fill(dst, offset, PuzzleStore.MALFORMED);
+                mMalformed.incrementAndGet();
+                continue;
+            }
+            PuzzleStore.read(src, offset, puzzle);
+            byte[][] solution;
+            try {
+                solution = solver.solve(puzzle);
+            } catch (IllegalArgumentException e) {
+                PuzzleStore.fill(dst, offset, PuzzleStore.MALFORMED);
+                mMalformed.incrementAndGet();
+                continue;
+            }
+            if (solution == null) {
+                PuzzleStore.fill(dst, offset, PuzzleStore.UNSOLVABLE);
+                mUnsolvable.incrementAndGet();
+            } else {
+                PuzzleStore.write(dst, offset, solution);
+                mSolved.incrementAndGet();
+            }
+        }
+        dst.force();
+    }
+
+    /***
+     * Print the results and the throughput of this run to the standard error.
+     *
+     * @param records
+     *            The number of records in the store.
+     * @param elapsed
+     *            The elapsed (wall clock) time of the whole run, in
+     *            nanoseconds.
+     */
+    public void printStatistics(final long records, final long elapsed) {
+        final long count = mSolved.get() + mUnsolvable.get() + mMalformed.get();
+        System.err.println(String.format("%d of %d puzzles in %.3f s by %d threads (%s): %.1f puzzles/s",
+                count, records, elapsed / 1e9, mThreads, mEngine, count / (elapsed / 1e9)));
+        System.err.println(String.format("%d solved, %d unsolvable, %d malformed, %d chunks skipped",
+                mSolved.get(), mUnsolvable.get(), mMalformed.get(), mSkipped));
+    }
+}
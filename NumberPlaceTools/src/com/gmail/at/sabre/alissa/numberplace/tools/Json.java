@@ -0,0 +1,192 @@
+package com.gmail.at.sabre.alissa.numberplace.tools;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/***
+ * A minimal JSON reader and writer for {@link SolverServer}, so that the tools
+ * need no library other than SAT4J.
+ * <p>
+ * {@link #parse(String)} converts an object into a {@link Map}, an array into
+ * a {@link List}, a string into a {@link String}, a number into a
+ * {@link Double}, true and false into a {@link Boolean}, and null into null.
+ * Arrays and objects may be nested up to {@link #MAX_DEPTH} levels, so that a
+ * malicious text cannot exhaust the stack.
+ *
+ * @author alissa
+ */
+public class Json {
+
+    /***
+     * The maximum nesting level of arrays and objects.
+     */
+    public static final int MAX_DEPTH = 32;
+
+    private final String mText;
+
+    private int mPos;
+
+    /***
+     * The nesting level of the array or object being parsed.
+     */
+    private int mDepth;
+
+    private Json(final String text) {
+        mText = text;
+    }
+
+    /***
+     * Parse a JSON text.
+     *
+     * @param text
+     *            The text.
+     * @return The value.
+     * @throws IllegalArgumentException
+     *             If the text is not a JSON text.
+     */
+    public static Object parse(final String text) {
+        final Json json = new Json(text);
+        final Object value = json.value();
+        json.skipSpaces();
+        if (json.mPos < text.length()) throw json.error("Extra characters");
+        return value;
+    }
+
+    /***
+     * Quote a string as a JSON string.
+     *
+     * @param s
+     *            The string, or null.
+     * @return The JSON string, or "null".
+     */
+    public static String quote(final String s) {
+        if (s == null) return "null";
+        final StringBuilder sb = new StringBuilder(s.length() + 2);
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int)c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    // private methods
+
+    private Object value() {
+        skipSpaces();
+        if (mPos >= mText.length()) throw error("Unexpected end");
+        final char c = mText.charAt(mPos);
+        if (c == '{' || c == '[') {
+            if (++mDepth > MAX_DEPTH) throw error("Too deep nesting");
+            final Object value = c == '{' ? object() : array();
+            mDepth--;
+            return value;
+        }
+        if (c == '"') return string();
+        if (mText.startsWith("true", mPos)) { mPos += 4; return Boolean.TRUE; }
+        if (mText.startsWith("false", mPos)) { mPos += 5; return Boolean.FALSE; }
+        if (mText.startsWith("null", mPos)) { mPos += 4; return null; }
+        return number();
+    }
+
+    private Map<String, Object> object() {
+        final Map<String, Object> map = new LinkedHashMap<String, Object>();
+        mPos++;
+        skipSpaces();
+        if (accept('}')) return map;
+        do {
+            skipSpaces();
+            if (mPos >= mText.length() || mText.charAt(mPos) != '"') throw error("Expected a name");
+            final String name = string();
+            skipSpaces();
+            if (!accept(':')) throw error("Expected ':'");
+            map.put(name, value());
+            skipSpaces();
+        } while (accept(','));
+        if (!accept('}')) throw error("Expected ',' or '}'");
+        return map;
+    }
+
+    private List<Object> array() {
+        final List<Object> list = new ArrayList<Object>();
+        mPos++;
+        skipSpaces();
+        if (accept(']')) return list;
+        do {
+            list.add(value());
+            skipSpaces();
+        } while (accept(','));
+        if (!accept(']')) throw error("Expected ',' or ']'");
+        return list;
+    }
+
+    private String string() {
+        final StringBuilder sb = new StringBuilder();
+        mPos++;
+        while (true) {
+            if (mPos >= mText.length()) throw error("Unterminated string");
+            final char c = mText.charAt(mPos++);
+            if (c == '"') return sb.toString();
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            if (mPos >= mText.length()) throw error("Unterminated string");
+            final char e = mText.charAt(mPos++);
+            switch (e) {
+            case '"': case '\\': case '/': sb.append(e); break;
+            case 'b': sb.append('\b'); break;
+            case 'f': sb.append('\f'); break;
+            case 'n': sb.append('\n'); break;
+            case 'r': sb.append('\r'); break;
+            case 't': sb.append('\t'); break;
+            case 'u':
+                if (mPos + 4 > mText.length()) throw error("Bad escape");
+                try {
+                    sb.append((char)Integer.parseInt(mText.substring(mPos, mPos + 4), 16));
+                } catch (NumberFormatException ex) {
+                    throw error("Bad escape");
+                }
+                mPos += 4;
+                break;
+            default:
+                throw error("Bad escape");
+            }
+        }
+    }
+
+    private Double number() {
+        final int start = mPos;
+        while (mPos < mText.length() && "+-0123456789.eE".indexOf(mText.charAt(mPos)) >= 0) mPos++;
+        try {
+            return Double.valueOf(mText.substring(start, mPos));
+        } catch (NumberFormatException e) {
+            mPos = start;
+            throw error("Unexpected character");
+        }
+    }
+
+    private boolean accept(final char c) {
+        if (mPos < mText.length() && mText.charAt(mPos) == c) {
+            mPos++;
+            return true;
+        }
+        return false;
+    }
+
+    private void skipSpaces() {
+        while (mPos < mText.length() && " \t\r\n".indexOf(mText.charAt(mPos)) >= 0) mPos++;
+    }
+
+    private IllegalArgumentException error(final String message) {
+        return new IllegalArgumentException(String.format("%s at %d in JSON", message, mPos));
+    }
+}
@@ -0,0 +1,78 @@
+package com.gmail.at.sabre.alissa.numberplace.tools;
+
+/***
+ * Conversion between a number place puzzle and the common one-line text
+ * format, i.e., 81 characters listing the cells row by row, where a digit
+ * 1..9 is a filled cell and '0' or '.' is an empty cell. Any characters after
+ * the 81st, e.g., a comment, are ignored.
+ *
+ * @author alissa
+ */
+public class PuzzleFormat {
+
+    /***
+     * The dimension (i.e., both the height and the width) of a puzzle.
+     */
+    private static final int NN = 9;
+
+    /***
+     * The number of characters to represent a puzzle.
+     */
+    public static final int LENGTH = NN * NN;
+
+    private PuzzleFormat() {}
+
+    /***
+     * Indicates whether a line should be skipped, i.e., it is empty or a
+     * comment line starting with '#'.
+     *
+     * @param line
+     *            The line.
+     * @return True if the line has no puzzle.
+     */
+    public static boolean isBlank(final String line) {
+        final String s = line.trim();
+        return s.length() == 0 || s.charAt(0) == '#';
+    }
+
+    /***
+     * Parse a line into a puzzle.
+     *
+     * @param line
+     *            The line in the one-line format.
+     * @return The puzzle.
+     * @throws IllegalArgumentException
+     *             If the line is not in the format.
+     */
+    public static byte[][] parse(final String line) {
+        if (line.length() < LENGTH) {
+            throw new IllegalArgumentException(String.format("Too short line (%d characters)", line.length()));
+        }
+        final byte[][] puzzle = new byte[NN][NN];
+        for (int i = 0; i < LENGTH; i++) {
+            final char c = line.charAt(i);
+            if (c >= '1' && c <= '9') {
+                puzzle[i / NN][i % NN] = (byte)(c - '0');
+            } else if (c != '0' && c != '.') {
+                throw new IllegalArgumentException(String.format("Invalid character '%c' at %d", c, i + 1));
+            }
+        }
+        return puzzle;
+    }
+
+    /***
+     * Format a puzzle or a solution into a line.
+     *
+     * @param puzzle
+     *            The puzzle.
+     * @return The line in the one-line format, with '.' for empty cells.
+     */
+    public static String format(final byte[][] puzzle) {
+        final char[] chars = new char[LENGTH];
+        for (int i = 0; i < LENGTH; i++) {
+            final int d = puzzle[i / NN][i % NN];
+            chars[i] = d == 0 ? '.' : (char)('0' + d);
+        }
+        return new String(chars);
+    }
+}
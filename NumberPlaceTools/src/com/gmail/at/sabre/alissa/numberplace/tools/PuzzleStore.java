@@ -0,0 +1,258 @@
+package com.gmail.at.sabre.alissa.numberplace.tools;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/***
+ * The binary store of puzzles for {@link BulkSolver}, and a command line tool
+ * to convert it from and to the one-line text format (see
+ * {@link PuzzleFormat}).
+ * <p>
+ * A store is a plain file of fixed size records, with no header. A record is
+ * {@link #RECORD} bytes, one for each cell row by row, where a byte 1..9 is a
+ * filled cell and 0 is an empty cell. The n'th puzzle is at n * 81 in the
+ * file, so a range of puzzles can be read or written in place through a
+ * mapped buffer. A record filled with {@link #MALFORMED} stands for a line
+ * that was not a puzzle, and one filled with {@link #UNSOLVABLE} stands for a
+ * puzzle with no solution in a store of solutions.
+ * <p>
+ * Usage: PuzzleStore import [text] store, or PuzzleStore export store [text]
+ * <dl>
+ * <dt>import</dt>
+ * <dd>Read puzzles in the one-line format from the text file (the standard
+ * input if omitted or "-") and write them to the store.</dd>
+ * <dt>export</dt>
+ * <dd>Read puzzles or solutions from the store and write them in the one-line
+ * format to the text file (the standard output if omitted or "-"). A malformed
+ * record is written as "error", and an unsolvable one as "unsolvable", as
+ * {@link BatchSolver} does.</dd>
+ * </dl>
+ *
+ * @author alissa
+ */
+public class PuzzleStore {
+
+    /***
+     * The dimension (i.e., both the height and the width) of a puzzle.
+     */
+    private static final int NN = 9;
+
+    /***
+     * The size of a record in bytes.
+     */
+    public static final int RECORD = NN * NN;
+
+    /***
+     * The byte to fill a record of a malformed puzzle.
+     */
+    public static final byte MALFORMED = -1;
+
+    /***
+     * The byte to fill a record of an unsolvable puzzle.
+     */
+    public static final byte UNSOLVABLE = -2;
+
+    /***
+     * The number of records mapped at once on export.
+     */
+    private static final int WINDOW = 1 << 16;
+
+    private PuzzleStore() {}
+
+    public static void main(final String[] args) {
+        try {
+            if (args.length < 2 || args.length > 3) throw new IllegalArgumentException("Wrong number of arguments");
+            final long count;
+            if (args[0].equals("import")) {
+                final String text = args.length == 3 ? args[1] : "-";
+                final InputStream in = text.equals("-") ? System.in : new FileInputStream(text);
+                try {
+                    final OutputStream out = new FileOutputStream(args[args.length - 1]);
+                    try {
+                        count = importText(new BufferedReader(new InputStreamReader(in, "US-ASCII")), out);
+                    } finally {
+                        out.close();
+                    }
+                } finally {
+                    in.close();
+                }
+            } else if (args[0].equals("export")) {
+                final String text = args.length == 3 ? args[2] : "-";
+                final OutputStream out = text.equals("-") ? System.out : new FileOutputStream(text);
+                try {
+                    final Writer writer = new BufferedWriter(new OutputStreamWriter(out, "US-ASCII"));
+                    count = exportText(args[1], writer);
+                    writer.flush();
+                } finally {
+                    if (out != System.out) out.close();
+                }
+            } else {
+                throw new IllegalArgumentException("Unknown command " + args[0]);
+            }
+            System.err.println(String.format("%d records", count));
+
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: PuzzleStore import [text] store, or PuzzleStore export store [text]");
+            System.exit(2);
+        } catch (IOException e) {
+            System.err.println(e);
+            System.exit(1);
+        }
+    }
+
+    /***
+     * Convert puzzles in the one-line format into records. A blank line is
+     * skipped, and a malformed line is converted into a record of
+     * {@link #MALFORMED}, so that the n'th record is always for the n'th
+     * puzzle line.
+     *
+     * @param in
+     *            The reader to read puzzles from.
+     * @param out
+     *            The stream to write records to.
+     * @return The number of records written.
+     * @throws IOException
+     *             If reading or writing failed.
+     */
+    public static long importText(final BufferedReader in, final OutputStream out) throws IOException {
+        final OutputStream buffered = new BufferedOutputStream(out, RECORD * 1024);
+        final byte[] record = new byte[RECORD];
+        long count = 0;
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (PuzzleFormat.isBlank(line)) continue;
+            try {
+                final byte[][] puzzle = PuzzleFormat.parse(line);
+                for (int y = 0; y < NN; y++) {
+                    System.arraycopy(puzzle[y], 0, record, y * NN, NN);
+                }
+            } catch (IllegalArgumentException e) {
+                Arrays.fill(record, MALFORMED);
+            }
+            buffered.write(record);
+            count++;
+        }
+        buffered.flush();
+        return count;
+    }
+
+    /***
+     * Convert records into the one-line format.
+     *
+     * @param store
+     *            The name of the store file.
+     * @param out
+     *            The writer to write lines to.
+     * @return The number of records read.
+     * @throws IOException
+     *             If reading or writing failed.
+     * @throws IllegalArgumentException
+     *             If the file size is not a multiple of the record size.
+     */
+    public static long exportText(final String store, final Writer out) throws IOException {
+        final RandomAccessFile file = new RandomAccessFile(store, "r");
+        try {
+            final FileChannel channel = file.getChannel();
+            final long count = countRecords(channel.size());
+            final byte[][] puzzle = new byte[NN][NN];
+            for (long first = 0; first < count; first += WINDOW) {
+                final int n = (int)Math.min(WINDOW, count - first);
+                final ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, first * RECORD, (long)n * RECORD);
+                for (int k = 0; k < n; k++) {
+                    final int offset = k * RECORD;
+                    final byte b = buffer.get(offset);
+                    if (b == MALFORMED) {
+                        out.write("error");
+                    } else if (b == UNSOLVABLE) {
+                        out.write("unsolvable");
+                    } else {
+                        read(buffer, offset, puzzle);
+                        out.write(PuzzleFormat.format(puzzle));
+                    }
+                    out.write('\n');
+                }
+            }
+            return count;
+        } finally {
+            file.close();
+        }
+    }
+
+    /***
+     * Return the number of records in a store.
+     *
+     * @param size
+     *            The size of the store file in bytes.
+     * @return The number of records.
+     * @throws IllegalArgumentException
+     *             If the size is not a multiple of the record size.
+     */
+    public static long countRecords(final long size) {
+        if (size % RECORD != 0) {
+            throw new IllegalArgumentException(String.format("Store size must be a multiple of %d but %d", RECORD, size));
+        }
+        return size / RECORD;
+    }
+
+    /***
+     * Read a record into an array, without changing the buffer's position.
+     *
+     * @param buffer
+     *            The buffer.
+     * @param offset
+     *            The index of the record in the buffer.
+     * @param puzzle
+     *            The nine by nine array to read into.
+     */
+    public static void read(final ByteBuffer buffer, final int offset, final byte[][] puzzle) {
+        for (int i = 0; i < RECORD; i++) {
+            puzzle[i / NN][i % NN] = buffer.get(offset + i);
+        }
+    }
+
+    /***
+     * Write an array into a record, without changing the buffer's position.
+     *
+     * @param buffer
+     *            The buffer.
+     * @param offset
+     *            The index of the record in the buffer.
+     * @param puzzle
+     *            The nine by nine array to write.
+     */
+    public static void write(final ByteBuffer buffer, final int offset, final byte[][] puzzle) {
+        for (int i = 0; i < RECORD; i++) {
+            buffer.put(offset + i, puzzle[i / NN][i % NN]);
+        }
+    }
+
+    /***
+     * Fill a record with a byte, without changing the buffer's position.
+     *
+     * @param buffer
+     *            The buffer.
+     * @param offset
+     *            The index of the record in the buffer.
+     * @param b
+     *            The byte, e.g., {@link #UNSOLVABLE}.
+     */
+    public static void fill(final ByteBuffer buffer, final int offset, final byte b) {
+        for (int i = 0; i < RECORD; i++) {
+            buffer.put(offset + i, b);
+        }
+    }
+}
@@ -0,0 +1,400 @@
+package com.gmail.at.sabre.alissa.numberplace.tools;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.gmail.at.sabre.alissa.numberplace.solver.SolverEngine;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/***
+ * A small HTTP service to solve puzzles for other programs, without Android.
+ * It listens on the loopback interface only, and it can be embedded in
+ * another program as well as run from the command line.
+ * <p>
+ * It accepts the following POST requests, whose bodies are JSON objects. A
+ * puzzle is a string in the one-line format (see {@link PuzzleFormat}), and a
+ * solution is a string in the same format, or null if the puzzle has no
+ * solution.
+ * <dl>
+ * <dt>/solve</dt>
+ * <dd>{"puzzle": puzzle} gives {"solution": solution}.</dd>
+ * <dt>/batch</dt>
+ * <dd>{"puzzles": [puzzle, ...]} gives {"solutions": [solution, ...]} in the
+ * same order. A batch has at most {@link #MAX_BATCH} puzzles.</dd>
+ * </dl>
+ * Each request is handled on a thread of a bounded pool, and its puzzles are
+ * solved as one work item on a fixed pool of worker threads, each having its
+ * own solver engine. The work items wait in a bounded queue. If the queue is
+ * full, the request is refused immediately with the status 429 (Too Many
+ * Requests), so that a client can back off rather than pile up. A bad request
+ * gets 400 and {"error": reason}. The handler threads are as many as the
+ * workers and the queue, i.e., enough to fill the queue; further connections,
+ * e.g., those sending their bodies slowly, wait for a handler rather than
+ * create a thread each.
+ * <p>
+ * Usage: SolverServer [-p port] [-t threads] [-q queue] [-e engine]
+ * <dl>
+ * <dt>-p port</dt>
+ * <dd>The port number. The default is {@link #DEFAULT_PORT}.</dd>
+ * <dt>-t threads</dt>
+ * <dd>The number of worker threads. The default is the number of processors.</dd>
+ * <dt>-q queue</dt>
+ * <dd>The number of work items that may wait for a worker. The default is
+ * {@link #DEFAULT_QUEUE}.</dd>
+ * <dt>-e engine</dt>
+ * <dd>The solver engine, as in {@link BatchSolver}. The default is
+ * "bitboard".</dd>
+ * </dl>
+ *
+ * @author alissa
+ */
+public class SolverServer {
+
+    /***
+     * The default port number on the loopback interface.
+     */
+    public static final int DEFAULT_PORT = 8091;
+
+    /***
+     * The default number of work items that may wait for a worker.
+     */
+    public static final int DEFAULT_QUEUE = 256;
+
+    /***
+     * The maximum number of puzzles in a batch.
+     */
+    public static final int MAX_BATCH = 1000;
+
+    /***
+     * The maximum size of a request body in bytes. It is enough for a batch
+     * of {@link #MAX_BATCH} puzzles.
+     */
+    private static final int MAX_BODY = 1 << 18;
+
+    /***
+     * A daemon thread factory, so that an embedded server never keeps the VM
+     * alive by its threads other than the server's own dispatcher.
+     */
+    private static final ThreadFactory DAEMON_THREAD_FACTORY = new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            final Thread thread = new Thread(r);
+            thread.setDaemon(true);
+            return thread;
+        }
+    };
+
+    /***
+     * A response to send, with the status code and the JSON body.
+     */
+    private static class Response {
+
+        public final int mStatus;
+
+        public final String mBody;
+
+        public Response(final int status, final String body) {
+            mStatus = status;
+            mBody = body;
+        }
+
+        public static Response error(final int status, final String message) {
+            return new Response(status, "{\"error\":" + Json.quote(message) + "}");
+        }
+    }
+
+    private final HttpServer mServer;
+
+    private final String mEngine;
+
+    /***
+     * The idle time in seconds after which a handler thread ends.
+     */
+    private static final long HANDLER_KEEP_ALIVE = 60;
+
+    /***
+     * The threads to handle requests, one for each request in progress, up to
+     * the number of workers and the queue. They mostly wait for workers.
+     */
+    private final ThreadPoolExecutor mHandlers;
+
+    /***
+     * The worker threads to solve puzzles, with the bounded queue of work
+     * items.
+     */
+    private final ThreadPoolExecutor mWorkers;
+
+    /***
+     * The solver engine of each worker thread.
+     */
+    private final ThreadLocal<SolverEngine> mSolvers = new ThreadLocal<SolverEngine>() {
+        @Override
+        protected SolverEngine initialValue() {
+            return BatchSolver.newSolverEngine(mEngine);
+        }
+    };
+
+    /***
+     * Create a server. It doesn't accept requests until {@link #start()}.
+     *
+     * @param port
+     *            The port number on the loopback interface, or 0 for any free
+     *            port.
+     * @param threads
+     *            The number of worker threads.
+     * @param queue
+     *            The number of work items that may wait for a worker.
+     * @param engine
+     *            The name of the solver engine.
+     * @throws IOException
+     *             If the port is not available.
+     * @throws IllegalArgumentException
+     *             If the engine name is unknown.
+     */
+    public SolverServer(final int port, final int threads, final int queue, final String engine) throws IOException {
+        BatchSolver.newSolverEngine(engine); // Validate the name early.
+        mEngine = engine;
+        mWorkers = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queue), DAEMON_THREAD_FACTORY, new ThreadPoolExecutor.AbortPolicy());
+        mHandlers = new ThreadPoolExecutor(threads + queue, threads + queue, HANDLER_KEEP_ALIVE, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), DAEMON_THREAD_FACTORY);
+        mHandlers.allowCoreThreadTimeOut(true);
+
+        // InetAddress.getByName(null) is the loopback address.
+        mServer = HttpServer.create(new InetSocketAddress(InetAddress.getByName(null), port), 0);
+        mServer.setExecutor(mHandlers);
+        mServer.createContext("/solve", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                SolverServer.this.handle(exchange, false);
+            }
+        });
+        mServer.createContext("/batch", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                SolverServer.this.handle(exchange, true);
+            }
+        });
+    }
+
+    public static void main(final String[] args) {
+        int port = DEFAULT_PORT;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int queue = DEFAULT_QUEUE;
+        String engine = "bitboard";
+        try {
+            int i = 0;
+            while (i < args.length) {
+                final String arg = args[i++];
+                if (arg.equals("-p") && i < args.length) {
+                    port = Integer.parseInt(args[i++]);
+                } else if (arg.equals("-t") && i < args.length) {
+                    threads = Integer.parseInt(args[i++]);
+                    if (threads < 1) throw new IllegalArgumentException("threads must be positive");
+                } else if (arg.equals("-q") && i < args.length) {
+                    queue = Integer.parseInt(args[i++]);
+                    if (queue < 1) throw new IllegalArgumentException("queue must be positive");
+                } else if (arg.equals("-e") && i < args.length) {
+                    engine = args[i++];
+                } else {
+                    throw new IllegalArgumentException("Unknown option " + arg);
+                }
+            }
+
+            final SolverServer server = new SolverServer(port, threads, queue, engine);
+            server.start();
+            System.err.println(String.format("Listening on %s by %d threads (%s)", server.getAddress(), threads, engine));
+
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: SolverServer [-p port] [-t threads] [-q queue] [-e bitboard|dlx|sat|sat-compact|portfolio]");
+            System.exit(2);
+        } catch (IOException e) {
+            System.err.println(e);
+            System.exit(1);
+        }
+    }
+
+    // public methods
+
+    /***
+     * Start accepting requests.
+     */
+    public void start() {
+        mServer.start();
+    }
+
+    /***
+     * Stop accepting requests, and abandon the requests in progress.
+     */
+    public void stop() {
+        mServer.stop(0);
+        mWorkers.shutdownNow();
+        mHandlers.shutdownNow();
+    }
+
+    /***
+     * Return the address the server listens on, e.g., to find the port chosen
+     * for port 0.
+     *
+     * @return The address the server listens on.
+     */
+    public InetSocketAddress getAddress() {
+        return mServer.getAddress();
+    }
+
+    // private methods
+
+    /***
+     * Handle a request to either endpoint.
+     *
+     * @param exchange
+     *            The request and its response.
+     * @param batch
+     *            True for /batch, false for /solve.
+     * @throws IOException
+     *             If communication failed.
+     */
+    private void handle(final HttpExchange exchange, final boolean batch) throws IOException {
+        Response response;
+        try {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                exchange.getResponseHeaders().set("Allow", "POST");
+                response = Response.error(405, "Use POST");
+            } else {
+                final String body = readBody(exchange.getRequestBody());
+                response = body == null
+                        ? Response.error(413, "Too large request")
+                        : solve(parsePuzzles(body, batch), batch);
+            }
+        } catch (IllegalArgumentException e) {
+            response = Response.error(400, e.getMessage());
+        } catch (RejectedExecutionException e) {
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            response = Response.error(429, "Too many requests");
+        } catch (RuntimeException e) {
+            // Every exchange needs a response, or the client hangs.
+            response = Response.error(500, String.valueOf(e));
+        }
+
+        final byte[] bytes = response.mBody.getBytes("UTF-8");
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(response.mStatus, bytes.length);
+        final OutputStream out = exchange.getResponseBody();
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+    }
+
+    /***
+     * Read a request body as a string.
+     *
+     * @return The body, or null if it is larger than {@link #MAX_BODY}.
+     */
+    private static String readBody(final InputStream in) throws IOException {
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[8192];
+        try {
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                body.write(buffer, 0, n);
+                if (body.size() > MAX_BODY) return null;
+            }
+        } finally {
+            in.close();
+        }
+        return body.toString("UTF-8");
+    }
+
+    /***
+     * Parse the puzzles in a request body.
+     *
+     * @return The puzzles, just one if not a batch.
+     * @throws IllegalArgumentException
+     *             If the body is malformed.
+     */
+    private static List<byte[][]> parsePuzzles(final String body, final boolean batch) {
+        final Object json = Json.parse(body);
+        if (!(json instanceof Map)) throw new IllegalArgumentException("Request must be an object");
+        final Map<?, ?> request = (Map<?, ?>)json;
+        final List<byte[][]> puzzles = new ArrayList<byte[][]>();
+        if (!batch) {
+            puzzles.add(parsePuzzle(request.get("puzzle"), "puzzle"));
+            return puzzles;
+        }
+        if (!(request.get("puzzles") instanceof List)) throw new IllegalArgumentException("puzzles must be an array");
+        final List<?> list = (List<?>)request.get("puzzles");
+        if (list.size() > MAX_BATCH) {
+            throw new IllegalArgumentException(String.format("puzzles must have at most %d elements but %d", MAX_BATCH, list.size()));
+        }
+        for (int i = 0; i < list.size(); i++) {
+            puzzles.add(parsePuzzle(list.get(i), "puzzles[" + i + "]"));
+        }
+        return puzzles;
+    }
+
+    private static byte[][] parsePuzzle(final Object value, final String name) {
+        if (!(value instanceof String)) throw new IllegalArgumentException(name + " must be a string");
+        try {
+            return PuzzleFormat.parse((String)value);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(name + ": " + e.getMessage());
+        }
+    }
+
+    /***
+     * Solve puzzles as a work item on a worker thread, and wait for it.
+     *
+     * @return The response.
+     * @throws RejectedExecutionException
+     *             If the queue is full.
+     */
+    private Response solve(final List<byte[][]> puzzles, final boolean batch) {
+        final Future<String[]> future = mWorkers.submit(new Callable<String[]>() {
+            public String[] call() {
+                final SolverEngine solver = mSolvers.get();
+                final String[] solutions = new String[puzzles.size()];
+                for (int i = 0; i < solutions.length; i++) {
+                    final byte[][] solution = solver.solve(puzzles.get(i));
+                    solutions[i] = solution == null ? null : PuzzleFormat.format(solution);
+                }
+                return solutions;
+            }
+        });
+
+        final String[] solutions;
+        try {
+            solutions = future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            return Response.error(503, "Shutting down");
+        } catch (ExecutionException e) {
+            return Response.error(500, String.valueOf(e.getCause()));
+        }
+
+        if (!batch) return new Response(200, "{\"solution\":" + Json.quote(solutions[0]) + "}");
+        final StringBuilder sb = new StringBuilder("{\"solutions\":[");
+        for (int i = 0; i < solutions.length; i++) {
+            if (i > 0) sb.append(',');
+            sb.append(Json.quote(solutions[i]));
+        }
+        return new Response(200, sb.append("]}").toString());
+    }
+}